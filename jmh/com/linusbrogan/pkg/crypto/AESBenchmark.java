@@ -0,0 +1,77 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Single-block AES and key setup for each key size and engine. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AESBenchmark {
+	@Param({"128", "192", "256"})
+	public int keyBits;
+
+	@Param({"TABLE", "BITSLICED", "REFERENCE"})
+	public AES.Engine engine;
+
+	private byte[] key;
+	private AES aes;
+	private byte[] block;
+	private byte[] ciphertext;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(keyBits);
+		key = new byte[keyBits / 8];
+		random.nextBytes(key);
+		aes = new AES(key, engine);
+		block = new byte[AES.BLOCK_SIZE];
+		random.nextBytes(block);
+		ciphertext = aes.encrypt(block);
+	}
+
+	@Benchmark
+	public byte[] encrypt(Payload payload) {
+		payload.add(AES.BLOCK_SIZE);
+		return aes.encrypt(block);
+	}
+
+	@Benchmark
+	public byte[] decrypt(Payload payload) {
+		payload.add(AES.BLOCK_SIZE);
+		return aes.decrypt(ciphertext);
+	}
+
+	@Benchmark
+	public byte[] encryptBlockInPlace(Payload payload) {
+		payload.add(AES.BLOCK_SIZE);
+		aes.encryptBlock(block, 0, block, 0);
+		return block;
+	}
+
+	@Benchmark
+	public AES newInstance() {
+		return new AES(key, engine);
+	}
+
+	@Benchmark
+	public AES rekey() {
+		aes.rekey(key);
+		return aes;
+	}
+}
@@ -0,0 +1,89 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** XOR and hex conversion, comparing the word-at-a-time xorInto and xor with the byte loops they replaced. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BytesBenchmark {
+	@Param({"16", "64", "1024", "65536"})
+	public int length;
+
+	private byte[] a;
+	private byte[] b;
+	private byte[] dst;
+	private String hex;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(length);
+		a = new byte[length];
+		b = new byte[length];
+		dst = new byte[length];
+		random.nextBytes(a);
+		random.nextBytes(b);
+		hex = Bytes.convertBytesToHex(a);
+	}
+
+	@Benchmark
+	public byte[] xor(Payload payload) {
+		payload.add(length);
+		return Bytes.xor(a, b);
+	}
+
+	@Benchmark
+	public byte[] xorInto(Payload payload) {
+		payload.add(length);
+		Bytes.xorInto(a, 0, b, 0, dst, 0, length);
+		return dst;
+	}
+
+	@Benchmark
+	public byte[] byteLoop(Payload payload) {
+		payload.add(length);
+		for (int i = 0; i < length; i++) {
+			dst[i] = (byte) (a[i] ^ b[i]);
+		}
+		return dst;
+	}
+
+	/** Bytes.xor as it was before xorInto: a new array filled a byte at a time. */
+	@Benchmark
+	public byte[] allocatingByteLoop(Payload payload) {
+		payload.add(length);
+		byte[] xor = new byte[length];
+		for (int i = 0; i < length; i++) {
+			xor[i] = (byte) (a[i] ^ b[i]);
+		}
+		return xor;
+	}
+
+	@Benchmark
+	public String convertBytesToHex(Payload payload) {
+		payload.add(length);
+		return Bytes.convertBytesToHex(a);
+	}
+
+	@Benchmark
+	public byte[] convertHexToBytes(Payload payload) {
+		payload.add(length);
+		return Bytes.convertHexToBytes(hex);
+	}
+}
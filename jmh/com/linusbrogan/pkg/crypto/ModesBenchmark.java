@@ -0,0 +1,97 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** CBC, CTR, and GCM over payloads from one block to 64 MiB, with AES-128 and the default engine. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class ModesBenchmark {
+	@Param({"16", "1024", "65536", "1048576", "67108864"})
+	public int size;
+
+	private AES_CBC cbc;
+	private AES_CTR ctr;
+	private AES_GCM gcm;
+	private byte[] iv;
+	private byte[] message;
+	private byte[] cbcCiphertext;
+	private byte[] ctrCiphertext;
+	private byte[] gcmIV;
+	private byte[] aad;
+	private byte[] gcmCiphertext;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(size);
+		byte[] key = new byte[16];
+		random.nextBytes(key);
+		AES aes = new AES(key);
+		cbc = new AES_CBC(aes);
+		ctr = new AES_CTR(aes);
+		gcm = new AES_GCM(aes);
+		iv = new byte[AES.BLOCK_SIZE];
+		random.nextBytes(iv);
+		message = new byte[size];
+		random.nextBytes(message);
+		cbcCiphertext = cbc.encrypt(iv, message);
+		ctrCiphertext = ctr.encrypt(iv, message);
+		gcmIV = new byte[AES_GCM.IV_LENGTH];
+		random.nextBytes(gcmIV);
+		aad = new byte[20];
+		random.nextBytes(aad);
+		gcmCiphertext = gcm.encrypt(gcmIV, aad, message);
+	}
+
+	@Benchmark
+	public byte[] cbcEncrypt(Payload payload) {
+		payload.add(size);
+		return cbc.encrypt(iv, message);
+	}
+
+	@Benchmark
+	public byte[] cbcDecrypt(Payload payload) {
+		payload.add(size);
+		return cbc.decrypt(cbcCiphertext);
+	}
+
+	@Benchmark
+	public byte[] ctrEncrypt(Payload payload) {
+		payload.add(size);
+		return ctr.encrypt(iv, message);
+	}
+
+	@Benchmark
+	public byte[] ctrDecrypt(Payload payload) {
+		payload.add(size);
+		return ctr.decrypt(ctrCiphertext);
+	}
+
+	@Benchmark
+	public byte[] gcmEncrypt(Payload payload) {
+		payload.add(size);
+		return gcm.encrypt(gcmIV, aad, message);
+	}
+
+	@Benchmark
+	public byte[] gcmDecrypt(Payload payload) {
+		payload.add(size);
+		return gcm.decrypt(aad, gcmCiphertext);
+	}
+}
@@ -0,0 +1,66 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** HOTP and TOTP generation for each hash algorithm, through the static methods and the reusable generators. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OTPBenchmark {
+	@Param({"SHA1", "SHA256", "SHA512"})
+	public HOTP.HashAlgorithm algorithm;
+
+	private byte[] secret;
+	private HOTP hotp;
+	private TOTP totp;
+	private long counter;
+
+	@Setup
+	public void setUp() {
+		// The RFC 6238 test secrets, sized to the hash.
+		String digits = "1234567890".repeat(7);
+		int length = switch (algorithm) {
+			case SHA1 -> 20;
+			case SHA256 -> 32;
+			case SHA512 -> 64;
+		};
+		secret = Bytes.convertTextToBytes(digits.substring(0, length));
+		hotp = new HOTP(secret, algorithm);
+		totp = new TOTP(secret, 8, 0, 30, algorithm);
+	}
+
+	@Benchmark
+	public int staticHOTP() {
+		return HOTP.HOTP(secret, counter++, 6, algorithm);
+	}
+
+	@Benchmark
+	public int staticTOTP() {
+		return TOTP.TOTP(secret, 8, 0, 30, algorithm);
+	}
+
+	@Benchmark
+	public int reusableHOTP() {
+		return hotp.generate(counter++);
+	}
+
+	@Benchmark
+	public int reusableTOTP() {
+		return totp.generate();
+	}
+}
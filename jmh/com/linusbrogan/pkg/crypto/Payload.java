@@ -0,0 +1,17 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Counts the bytes a benchmark processes, so that JMH reports megabytes per second next to ops/s. */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class Payload {
+	/** Megabytes (10^6 bytes) processed in the iteration. */
+	public double megabytes;
+
+	void add(int bytes) {
+		megabytes += bytes / 1e6;
+	}
+}
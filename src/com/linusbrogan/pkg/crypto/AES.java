@@ -1,5 +1,8 @@
 package com.linusbrogan.pkg.crypto;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /** An implementation of [FIPS 197](https://doi.org/10.6028/NIST.FIPS.197) */
@@ -15,9 +18,9 @@ public class AES {
 	 * "Non-linear substitution table used in several byte substitution transformations and in the Key Expansion routine to perform a one-for-one substitution of a byte value" (page 6).
 	 * Specified in Sec. 5.1.1.
 	 */
-	private static final byte[] S_BOX = Bytes.convertHexToBytes("637c777bf26b6fc53001672bfed7ab76ca82c97dfa5947f0add4a2af9ca472c0b7fd9326363ff7cc34a5e5f171d8311504c723c31896059a071280e2eb27b27509832c1a1b6e5aa0523bd6b329e32f8453d100ed20fcb15b6acbbe394a4c58cfd0efaafb434d338545f9027f503c9fa851a3408f929d38f5bcb6da2110fff3d2cd0c13ec5f974417c4a77e3d645d197360814fdc222a908846eeb814de5e0bdbe0323a0a4906245cc2d3ac629195e479e7c8376d8dd54ea96c56f4ea657aae08ba78252e1ca6b4c6e8dd741f4bbd8b8a703eb5664803f60e613557b986c11d9ee1f8981169d98e949b1e87e9ce5528df8ca1890dbfe6426841992d0fb054bb16");
+	static final byte[] S_BOX = Bytes.convertHexToBytes("637c777bf26b6fc53001672bfed7ab76ca82c97dfa5947f0add4a2af9ca472c0b7fd9326363ff7cc34a5e5f171d8311504c723c31896059a071280e2eb27b27509832c1a1b6e5aa0523bd6b329e32f8453d100ed20fcb15b6acbbe394a4c58cfd0efaafb434d338545f9027f503c9fa851a3408f929d38f5bcb6da2110fff3d2cd0c13ec5f974417c4a77e3d645d197360814fdc222a908846eeb814de5e0bdbe0323a0a4906245cc2d3ac629195e479e7c8376d8dd54ea96c56f4ea657aae08ba78252e1ca6b4c6e8dd741f4bbd8b8a703eb5664803f60e613557b986c11d9ee1f8981169d98e949b1e87e9ce5528df8ca1890dbfe6426841992d0fb054bb16");
 	/** Inverse S-box (page 22). */
-	private static final byte[] INV_S_BOX = Bytes.convertHexToBytes("52096ad53036a538bf40a39e81f3d7fb7ce339829b2fff87348e4344c4dee9cb547b9432a6c2233dee4c950b42fac34e082ea16628d924b2765ba2496d8bd12572f8f66486689816d4a45ccc5d65b6926c704850fdedb9da5e154657a78d9d8490d8ab008cbcd30af7e45805b8b34506d02c1e8fca3f0f02c1afbd0301138a6b3a9111414f67dcea97f2cfcef0b4e67396ac7422e7ad3585e2f937e81c75df6e47f11a711d29c5896fb7620eaa18be1bfc563e4bc6d279209adbc0fe78cd5af41fdda8338807c731b11210592780ec5f60517fa919b54a0d2de57a9f93c99cefa0e03b4dae2af5b0c8ebbb3c83539961172b047eba77d626e169146355210c7d");
+	static final byte[] INV_S_BOX = Bytes.convertHexToBytes("52096ad53036a538bf40a39e81f3d7fb7ce339829b2fff87348e4344c4dee9cb547b9432a6c2233dee4c950b42fac34e082ea16628d924b2765ba2496d8bd12572f8f66486689816d4a45ccc5d65b6926c704850fdedb9da5e154657a78d9d8490d8ab008cbcd30af7e45805b8b34506d02c1e8fca3f0f02c1afbd0301138a6b3a9111414f67dcea97f2cfcef0b4e67396ac7422e7ad3585e2f937e81c75df6e47f11a711d29c5896fb7620eaa18be1bfc563e4bc6d279209adbc0fe78cd5af41fdda8338807c731b11210592780ec5f60517fa919b54a0d2de57a9f93c99cefa0e03b4dae2af5b0c8ebbb3c83539961172b047eba77d626e169146355210c7d");
 
 	/**
 	 * "The round constant word array" (page 7).
@@ -25,7 +28,7 @@ public class AES {
 	 */
 	// AES accesses Rcon[i] for i < max(Nb * (Nr + 1) / Nk) = 11 (maximum for AES-128), so Rcon must have length 11 (Fig. 11).
 	private static final byte[][] Rcon = new byte[11][WORD_SIZE];
-	{
+	static {
 		byte x = 1;
 		for (int i = 1; i < Rcon.length; i++) {
 			Rcon[i][0] = x;
@@ -33,18 +36,104 @@ public class AES {
 		}
 	}
 
+	/** Zero bytes for a batch of CTR keystream, whose XOR with the keystream is the keystream itself. Never written. */
+	private static final byte[] ZEROES = new byte[TableAES.LANES * BLOCK_SIZE];
+	/** Scratch space for direct buffers that an engine cannot read or write in place, so those paths make no heap allocations per call. */
+	private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(ZEROES.length));
+
 	/** "Number of 32-bit words comprising the Cipher Key" (page 7). */
 	private final int Nk;
 	/** "Number of rounds, which is a function of Nk and Nb (which is fixed)" (page 7). */
 	private final int Nr;
-	/** Key schedule (Sec 5.2) */
-	private final byte[][] w;
+	/** Implementation used for encryption and decryption. */
+	private final Engine engine;
+	/** Key schedule (Sec 5.2) with one word per int, used by the reference and table engines. The reference engine builds it with KeyExpansion. */
+	private final int[] w;
+	/**
+	 * Equivalent Inverse Cipher key schedule (Sec. 5.3.5), used by the table engine.
+	 * Built on first decryption, so instances that only encrypt (as in CTR mode) never pay for it.
+	 */
+	private volatile int[] dk;
+	/** Bitsliced key schedule, used by the bitsliced engine. */
+	private final long[] bk;
 
+	/**
+	 * @param key AES key of length of 16, 24, or 32 bytes
+	 */
 	public AES(byte[] key) {
+		this(key, Engine.TABLE);
+	}
+
+	/**
+	 * @param key AES key of length of 16, 24, or 32 bytes
+	 * @param engine implementation to use
+	 */
+	public AES(byte[] key, Engine engine) {
 		AESMode mode = selectModeForKey(key.length);
 		this.Nk = mode.Nk;
 		this.Nr = mode.Nr;
-		w = KeyExpansion(key);
+		this.engine = engine;
+		if (engine == Engine.BITSLICED) {
+			w = null;
+			bk = BitslicedAES.expandKey(key, Nk, Nr);
+		} else if (engine == Engine.REFERENCE) {
+			w = new int[Nb * (Nr + 1)];
+			packKeyExpansion(key, w);
+			bk = null;
+		} else {
+			w = TableAES.expandKey(key, Nk, Nr);
+			bk = null;
+		}
+	}
+
+	/**
+	 * Replaces the key, expanding it into the existing key schedule.
+	 * The table engine makes no heap allocations, so pooled instances can change keys cheaply.
+	 * The reference and bitsliced engines allocate working arrays on each call; the bitsliced engine zeroizes them before returning.
+	 * Package-private, so that an instance handed to callers, as AESKeyCache shares them, cannot have its key changed under another caller.
+	 * Must not be called while another thread uses this instance.
+	 * @param key AES key of the same length as the current one
+	 */
+	void rekey(byte[] key) {
+		assert key.length == WORD_SIZE * Nk;
+		if (engine == Engine.BITSLICED) {
+			BitslicedAES.expandKey(key, Nk, Nr, bk);
+			return;
+		}
+		if (engine == Engine.REFERENCE) {
+			packKeyExpansion(key, w);
+			return;
+		}
+		TableAES.expandKey(key, Nk, Nr, w);
+		int[] dk = this.dk;
+		if (dk != null) {
+			TableAES.invertKey(w, Nr, dk);
+		}
+	}
+
+	/** Overwrites the key schedule with zeroes, after which this instance must not be used. */
+	void zeroize() {
+		if (w != null) {
+			Arrays.fill(w, 0);
+		}
+		int[] dk = this.dk;
+		if (dk != null) {
+			Arrays.fill(dk, 0);
+		}
+		if (bk != null) {
+			Arrays.fill(bk, 0);
+		}
+	}
+
+	/** @return the table engine's decryption key schedule, building it on first use */
+	private int[] decryptionKey() {
+		int[] dk = this.dk;
+		if (dk == null) {
+			// Threads that race here build identical schedules, so keeping any one of them is fine.
+			dk = TableAES.invertKey(w, Nr);
+			this.dk = dk;
+		}
+		return dk;
 	}
 
 	static AESMode selectModeForKey(int keyLength) {
@@ -87,6 +176,177 @@ public class AES {
 	 */
 	public byte[] encrypt(byte[] in) {
 		assert in.length == WORD_SIZE * Nb;
+		byte[] out = new byte[in.length];
+		encryptBlock(in, 0, out, 0);
+		return out;
+	}
+
+	/**
+	 * Encrypts one block between caller buffers.
+	 * The table engine makes no heap allocations, and in and out may be the same region.
+	 * @param in buffer holding the message block at inOff
+	 * @param out buffer receiving the ciphertext block at outOff
+	 */
+	public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		assert inOff >= 0 && inOff + BLOCK_SIZE <= in.length;
+		assert outOff >= 0 && outOff + BLOCK_SIZE <= out.length;
+		if (engine == Engine.REFERENCE) {
+			byte[] block = Cipher(Arrays.copyOfRange(in, inOff, inOff + BLOCK_SIZE));
+			System.arraycopy(block, 0, out, outOff, BLOCK_SIZE);
+			return;
+		}
+		if (engine == Engine.BITSLICED) {
+			BitslicedAES.encryptBlocks(bk, Nr, in, inOff, out, outOff, 1);
+			return;
+		}
+		TableAES.encryptBlock(w, Nr, in, inOff, out, outOff);
+	}
+
+	/**
+	 * Encrypts the block at the position of in into out, advancing both buffers by one block.
+	 * Heap and direct buffers are read and written in place by the table engine, and the other engines copy direct buffers through per-thread scratch space.
+	 */
+	public void encryptBlock(ByteBuffer in, ByteBuffer out) {
+		if (in.remaining() < BLOCK_SIZE) throw new BufferUnderflowException();
+		if (out.remaining() < BLOCK_SIZE) throw new BufferOverflowException();
+		encryptBlock(in, in.position(), out, out.position());
+		in.position(in.position() + BLOCK_SIZE);
+		out.position(out.position() + BLOCK_SIZE);
+	}
+
+	/** Encrypts one block using absolute buffer indices, leaving the buffer positions alone. */
+	void encryptBlock(ByteBuffer in, int inPos, ByteBuffer out, int outPos) {
+		if (in.hasArray() && out.hasArray()) {
+			encryptBlock(in.array(), in.arrayOffset() + inPos, out.array(), out.arrayOffset() + outPos);
+		} else if (engine != Engine.TABLE) {
+			byte[] block = SCRATCH.get().array();
+			in.get(inPos, block, 0, BLOCK_SIZE);
+			encryptBlock(block, 0, block, 0);
+			out.put(outPos, block, 0, BLOCK_SIZE);
+		} else {
+			TableAES.encryptBlock(w, Nr, in, inPos, out, outPos);
+		}
+	}
+
+	/**
+	 * Decrypts the block at the position of in into out, advancing both buffers by one block.
+	 * Heap and direct buffers are read and written in place by the table engine, and the other engines copy direct buffers through per-thread scratch space.
+	 */
+	public void decryptBlock(ByteBuffer in, ByteBuffer out) {
+		if (in.remaining() < BLOCK_SIZE) throw new BufferUnderflowException();
+		if (out.remaining() < BLOCK_SIZE) throw new BufferOverflowException();
+		decryptBlock(in, in.position(), out, out.position());
+		in.position(in.position() + BLOCK_SIZE);
+		out.position(out.position() + BLOCK_SIZE);
+	}
+
+	/** Decrypts one block using absolute buffer indices, leaving the buffer positions alone. */
+	void decryptBlock(ByteBuffer in, int inPos, ByteBuffer out, int outPos) {
+		if (in.hasArray() && out.hasArray()) {
+			decryptBlock(in.array(), in.arrayOffset() + inPos, out.array(), out.arrayOffset() + outPos);
+		} else if (engine != Engine.TABLE) {
+			byte[] block = SCRATCH.get().array();
+			in.get(inPos, block, 0, BLOCK_SIZE);
+			decryptBlock(block, 0, block, 0);
+			out.put(outPos, block, 0, BLOCK_SIZE);
+		} else {
+			TableAES.decryptBlock(decryptionKey(), Nr, in, inPos, out, outPos);
+		}
+	}
+
+	/**
+	 * XORs the CTR mode keystream for consecutive counter blocks from in[inOff..] into out[outOff..].
+	 * The table engine encrypts several counter blocks per pass and makes no heap allocations.
+	 * @param counterHi first 8 bytes of the initial counter block, big-endian
+	 * @param counterLo last 8 bytes of the initial counter block, big-endian
+	 * @param length number of bytes, which need not be a multiple of the block size
+	 */
+	void xorKeystream(long counterHi, long counterLo, byte[] in, int inOff, byte[] out, int outOff, int length) {
+		assert inOff >= 0 && inOff + length <= in.length;
+		assert outOff >= 0 && outOff + length <= out.length;
+		if (engine == Engine.REFERENCE) {
+			byte[] counter = new byte[BLOCK_SIZE];
+			byte[] keystream = new byte[BLOCK_SIZE];
+			for (int done = 0; done < length; done += BLOCK_SIZE) {
+				Bytes.BIG_ENDIAN_LONGS.set(counter, 0, counterHi);
+				Bytes.BIG_ENDIAN_LONGS.set(counter, 8, counterLo);
+				encryptBlock(counter, 0, keystream, 0);
+				Bytes.xorInto(in, inOff + done, keystream, 0, out, outOff + done, Math.min(BLOCK_SIZE, length - done));
+				counterLo++;
+				if (counterLo == 0) {
+					counterHi++;
+				}
+			}
+			return;
+		}
+		if (engine == Engine.BITSLICED) {
+			BitslicedAES.ctr(bk, Nr, counterHi, counterLo, in, inOff, out, outOff, length);
+			return;
+		}
+		TableAES.ctr(w, Nr, counterHi, counterLo, in, inOff, out, outOff, length);
+	}
+
+	/**
+	 * XORs the CTR mode keystream into out like the byte array version, using absolute buffer indices.
+	 * Direct buffers are combined in place with keystream generated a few blocks at a time into per-thread scratch space.
+	 */
+	void xorKeystream(long counterHi, long counterLo, ByteBuffer in, int inPos, ByteBuffer out, int outPos, int length) {
+		if (in.hasArray() && out.hasArray()) {
+			xorKeystream(counterHi, counterLo, in.array(), in.arrayOffset() + inPos, out.array(), out.arrayOffset() + outPos, length);
+			return;
+		}
+		int batch = ZEROES.length;
+		ByteBuffer keystreamBuffer = SCRATCH.get();
+		byte[] keystream = keystreamBuffer.array();
+		for (int done = 0; done < length; done += batch) {
+			xorKeystream(counterHi, counterLo, ZEROES, 0, keystream, 0, batch);
+			long next = counterLo + TableAES.LANES;
+			counterHi = AES_CTR.addCarry(counterHi, counterLo, next);
+			counterLo = next;
+			Bytes.xorInto(in, inPos + done, keystreamBuffer, 0, out, outPos + done, Math.min(batch, length - done));
+		}
+	}
+
+	/**
+	 * Decrypts consecutive CBC mode blocks, each chained to the ciphertext block before it in in.
+	 * The table engine decrypts several blocks per pass and makes no heap allocations.
+	 * @param in buffer holding the IV or previous ciphertext block at inOff - BLOCK_SIZE, followed by the blocks to decrypt
+	 * @param out buffer receiving the message blocks, which must not overlap in
+	 * @param blocks number of blocks to decrypt
+	 */
+	void decryptChained(byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		assert inOff >= BLOCK_SIZE && inOff + blocks * BLOCK_SIZE <= in.length;
+		assert outOff >= 0 && outOff + blocks * BLOCK_SIZE <= out.length;
+		if (engine == Engine.REFERENCE) {
+			for (int i = 0; i < blocks; i++) {
+				int block = inOff + i * BLOCK_SIZE;
+				decryptBlock(in, block, out, outOff + i * BLOCK_SIZE);
+				Bytes.xorInto(out, outOff + i * BLOCK_SIZE, in, block - BLOCK_SIZE, out, outOff + i * BLOCK_SIZE, BLOCK_SIZE);
+			}
+			return;
+		}
+		if (engine == Engine.BITSLICED) {
+			BitslicedAES.cbcDecrypt(bk, Nr, in, inOff, out, outOff, blocks);
+			return;
+		}
+		TableAES.cbcDecrypt(decryptionKey(), Nr, in, inOff, out, outOff, blocks);
+	}
+
+	/** Decrypts consecutive CBC mode blocks like the byte array version, using absolute buffer indices. */
+	void decryptChained(ByteBuffer in, int inPos, ByteBuffer out, int outPos, int blocks) {
+		if (in.hasArray() && out.hasArray()) {
+			decryptChained(in.array(), in.arrayOffset() + inPos, out.array(), out.arrayOffset() + outPos, blocks);
+			return;
+		}
+		for (int i = 0; i < blocks; i++) {
+			int block = inPos + i * BLOCK_SIZE;
+			decryptBlock(in, block, out, outPos + i * BLOCK_SIZE);
+			Bytes.xorInto(out, outPos + i * BLOCK_SIZE, in, block - BLOCK_SIZE, out, outPos + i * BLOCK_SIZE, BLOCK_SIZE);
+		}
+	}
+
+	/** Cipher (Sec. 5.1) on the byte State, as written in the specification. */
+	byte[] Cipher(byte[] in) {
 		assert w.length == Nb * (Nr + 1);
 		byte[][] state = new byte[WORD_SIZE][Nb];
 		for (int r = 0; r < WORD_SIZE; r++) {
@@ -94,16 +354,16 @@ public class AES {
 				state[r][c] = in[r + WORD_SIZE * c];
 			}
 		}
-		AddRoundKey(state, Arrays.copyOfRange(w, 0, Nb - 1 + 1));
+		AddRoundKey(state, w, 0);
 		for (int round = 1; round <= Nr - 1; round++) {
 			SubBytes(state);
 			ShiftRows(state);
 			MixColumns(state);
-			AddRoundKey(state, Arrays.copyOfRange(w, round * Nb, (round + 1) * Nb - 1 + 1));
+			AddRoundKey(state, w, round);
 		}
 		SubBytes(state);
 		ShiftRows(state);
-		AddRoundKey(state, Arrays.copyOfRange(w, Nr * Nb, (Nr + 1) * Nb - 1 + 1));
+		AddRoundKey(state, w, Nr);
 
 		byte[] out = new byte[in.length];
 		for (int r = 0; r < WORD_SIZE; r++) {
@@ -169,6 +429,16 @@ public class AES {
 		}
 	}
 
+	/** AddRoundKey (Sec. 5.1.4) with the round key of the given round, taken from a key schedule of one word per int. */
+	static void AddRoundKey(byte[][] state, int[] w, int round) {
+		for (int c = 0; c < Nb; c++) {
+			int word = w[round * Nb + c];
+			for (int r = 0; r < WORD_SIZE; r++) {
+				state[r][c] ^= (byte) (word >>> (24 - 8 * r));
+			}
+		}
+	}
+
 	/**
 	 * "Function used in the Key Expansion routine that takes a four-byte input word and applies an S-box to each of the four bytes to produce an output word" (page 7).
 	 * Specified in Sec. 5.2.
@@ -221,6 +491,14 @@ public class AES {
 		return w;
 	}
 
+	/** Runs KeyExpansion, as written in the specification, and packs its words into w, one word per int. */
+	private void packKeyExpansion(byte[] key, int[] w) {
+		byte[][] words = KeyExpansion(key);
+		for (int i = 0; i < words.length; i++) {
+			w[i] = (words[i][0] & BYTE_MASK) << 24 | (words[i][1] & BYTE_MASK) << 16 | (words[i][2] & BYTE_MASK) << 8 | (words[i][3] & BYTE_MASK);
+		}
+	}
+
 	/**
 	 * Inverse Cipher: "Series of transformations that converts ciphertext to plaintext using the Cipher Key" (page 6).
 	 * Specified in Sec. 5.3.
@@ -229,6 +507,34 @@ public class AES {
 	 */
 	public byte[] decrypt(byte[] in) {
 		assert in.length == WORD_SIZE * Nb;
+		byte[] out = new byte[in.length];
+		decryptBlock(in, 0, out, 0);
+		return out;
+	}
+
+	/**
+	 * Decrypts one block between caller buffers.
+	 * The table engine makes no heap allocations, and in and out may be the same region.
+	 * @param in buffer holding the ciphertext block at inOff
+	 * @param out buffer receiving the message block at outOff
+	 */
+	public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+		assert inOff >= 0 && inOff + BLOCK_SIZE <= in.length;
+		assert outOff >= 0 && outOff + BLOCK_SIZE <= out.length;
+		if (engine == Engine.REFERENCE) {
+			byte[] block = InvCipher(Arrays.copyOfRange(in, inOff, inOff + BLOCK_SIZE));
+			System.arraycopy(block, 0, out, outOff, BLOCK_SIZE);
+			return;
+		}
+		if (engine == Engine.BITSLICED) {
+			BitslicedAES.decryptBlocks(bk, Nr, in, inOff, out, outOff, 1);
+			return;
+		}
+		TableAES.decryptBlock(decryptionKey(), Nr, in, inOff, out, outOff);
+	}
+
+	/** Inverse Cipher (Sec. 5.3) on the byte State, as written in the specification. */
+	byte[] InvCipher(byte[] in) {
 		assert w.length == Nb * (Nr + 1);
 		byte[][] state = new byte[WORD_SIZE][Nb];
 		for (int r = 0; r < WORD_SIZE; r++) {
@@ -236,16 +542,16 @@ public class AES {
 				state[r][c] = in[r + WORD_SIZE * c];
 			}
 		}
-		AddRoundKey(state, Arrays.copyOfRange(w, Nr * Nb, (Nr + 1) * Nb - 1 + 1));
+		AddRoundKey(state, w, Nr);
 		for (int round = Nr - 1; round >= 1; round--) {
 			InvShiftRows(state);
 			InvSubBytes(state);
-			AddRoundKey(state, Arrays.copyOfRange(w, round * Nb, (round + 1) * Nb - 1 + 1));
+			AddRoundKey(state, w, round);
 			InvMixColumns(state);
 		}
 		InvShiftRows(state);
 		InvSubBytes(state);
-		AddRoundKey(state, Arrays.copyOfRange(w, 0, Nb - 1 + 1));
+		AddRoundKey(state, w, 0);
 
 		byte[] out = new byte[in.length];
 		for (int r = 0; r < WORD_SIZE; r++) {
@@ -299,6 +605,16 @@ public class AES {
 		}
 	}
 
+	/** Implementations of the cipher, which produce identical results. */
+	public enum Engine {
+		/** Byte-oriented State transformations, following the specification step by step. */
+		REFERENCE,
+		/** 32-bit column State with precomputed round tables (see TableAES). */
+		TABLE,
+		/** Four blocks bitsliced into 64-bit words, with no key- or data-dependent memory accesses or branches (see BitslicedAES). */
+		BITSLICED
+	}
+
 	enum AESMode {
 		// Supported Key-Round combinations
 		AES128(128, 10),
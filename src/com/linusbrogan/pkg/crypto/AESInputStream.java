@@ -0,0 +1,106 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decrypts data in the layout of AES_CBC.encrypt and AES_CTR.encrypt: the IV, then the ciphertext.
+ * The IV, of the cipher's IV length, is read before the first byte is returned.
+ * With AES_GCM, this is also the layout of AES_GCM.encrypt without AAD, and the tag is only checked at the end of the message:
+ * the read that reaches the end throws SecurityException if the tag does not match, and everything read before must be discarded.
+ */
+public class AESInputStream extends FilterInputStream {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final IncrementalCipher cipher;
+	private final byte[] input = new byte[BUFFER_SIZE];
+	private final byte[] output = new byte[BUFFER_SIZE + 2 * AES.BLOCK_SIZE];
+	private final byte[] single = new byte[1];
+	/** Decrypted bytes not yet returned are output[outputStart..outputEnd]. */
+	private int outputStart;
+	private int outputEnd;
+	private boolean initialized;
+	private boolean finished;
+
+	/**
+	 * @param in source of the IV and ciphertext
+	 * @param cipher cipher for the mode, such as AES_CTR.newIncrementalCipher()
+	 */
+	public AESInputStream(InputStream in, IncrementalCipher cipher) {
+		super(in);
+		this.cipher = cipher;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int n = read(single, 0, 1);
+		return n < 0 ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		while (outputStart == outputEnd) {
+			if (!fill()) return -1;
+		}
+		int n = Math.min(len, outputEnd - outputStart);
+		System.arraycopy(output, outputStart, b, off, n);
+		outputStart += n;
+		return n;
+	}
+
+	/**
+	 * Decrypts the next piece of input.
+	 * @return false at the end of the message
+	 */
+	private boolean fill() throws IOException {
+		if (finished) return false;
+		if (!initialized) {
+			byte[] iv = in.readNBytes(cipher.getIVLength());
+			if (iv.length < cipher.getIVLength()) throw new EOFException("Missing IV");
+			cipher.init(false, iv);
+			initialized = true;
+		}
+		int n = in.read(input);
+		outputStart = 0;
+		if (n < 0) {
+			outputEnd = cipher.doFinal(output, 0);
+			finished = true;
+		} else {
+			outputEnd = cipher.update(input, 0, n, output, 0);
+		}
+		return true;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		byte[] discard = new byte[(int) Math.min(Math.max(n, 0), BUFFER_SIZE)];
+		long skipped = 0;
+		while (skipped < n) {
+			int count = read(discard, 0, (int) Math.min(n - skipped, discard.length));
+			if (count < 0) break;
+			skipped += count;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return outputEnd - outputStart;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+}
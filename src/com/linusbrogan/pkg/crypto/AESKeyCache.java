@@ -0,0 +1,177 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the expanded key schedules of recently used keys, so that switching between many keys does not rerun Key Expansion (Sec. 5.2) for each use.
+ * Keys are spread over lock stripes by hash, and each stripe evicts its least recently used key when full, so eviction is LRU within a stripe and approximately LRU overall.
+ * Safe for concurrent use. The AES instances handed out are shared between callers, which is safe because they are immutable.
+ * Evicting a key zeroizes the cache's copy of it but leaves the instance alone, since other threads may still be using it; the instance is reclaimed by the garbage collector once they drop it.
+ * Limitation: nothing tracks the holders of an instance, so the key schedules of evicted keys are never zeroized and stay on the heap until they are collected.
+ * With many keys cycling through the cache, that can be many schedules; callers that need schedules wiped promptly should expand their own instances instead.
+ */
+public class AESKeyCache {
+	/** Stripes used by default, which bounds the threads that can contend for one lock. */
+	public static final int DEFAULT_STRIPES = 64;
+
+	private final Stripe[] stripes;
+	private final AES.Engine engine;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maximumKeys number of key schedules that can be remembered at once
+	 * @param engine implementation the key schedules are expanded for
+	 */
+	public AESKeyCache(int maximumKeys, AES.Engine engine) {
+		this(maximumKeys, engine, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param maximumKeys number of key schedules that can be remembered at once
+	 * @param engine implementation the key schedules are expanded for
+	 * @param stripes number of independently locked stripes, a power of two
+	 */
+	public AESKeyCache(int maximumKeys, AES.Engine engine, int stripes) {
+		assert maximumKeys > 0;
+		assert stripes > 0 && Integer.bitCount(stripes) == 1;
+		stripes = Math.min(stripes, Integer.highestOneBit(maximumKeys));
+		this.engine = engine;
+		this.stripes = new Stripe[stripes];
+		// Spread the capacity so that the stripes hold maximumKeys in total.
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new Stripe(maximumKeys / stripes + (i < maximumKeys % stripes ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Looks up or expands the key schedule for key.
+	 * @param key AES key of length of 16, 24, or 32 bytes, which is copied and may be changed afterwards
+	 * @return a shared instance for key
+	 */
+	public AES get(byte[] key) {
+		assert AES.selectModeForKey(key.length) != null;
+		int hash = Arrays.hashCode(key);
+		Stripe stripe = stripes[spread(hash) & (stripes.length - 1)];
+		Key lookup = new Key(key, hash);
+		synchronized (stripe) {
+			AES aes = stripe.get(lookup);
+			if (aes != null) {
+				hits.increment();
+				return aes;
+			}
+		}
+		misses.increment();
+		// Expand outside the lock, so other keys in the stripe are not held up.
+		AES expanded = new AES(key, engine);
+		Key stored = new Key(key.clone(), hash);
+		synchronized (stripe) {
+			AES aes = stripe.putIfAbsent(stored, expanded);
+			if (aes != null) {
+				// Another thread expanded the same key first, and ours was never handed out.
+				stored.zeroize();
+				expanded.zeroize();
+				return aes;
+			}
+		}
+		return expanded;
+	}
+
+	/** Forgets every key, zeroizing the cache's copies of them. */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				for (Key key : stripe.keySet()) {
+					key.zeroize();
+				}
+				stripe.clear();
+			}
+		}
+	}
+
+	/** @return the number of key schedules remembered */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public AES.Engine getEngine() {
+		return engine;
+	}
+
+	/** @return the number of lookups that found their key schedule */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/** @return the number of lookups that expanded their key */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/** @return the number of key schedules evicted to make room for others */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/** Mixes the high bits of hash into the low bits that pick the stripe. */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/** A copy of a key, compared by contents. */
+	private static final class Key {
+		private final byte[] bytes;
+		private final int hash;
+
+		Key(byte[] bytes, int hash) {
+			this.bytes = bytes;
+			this.hash = hash;
+		}
+
+		void zeroize() {
+			Arrays.fill(bytes, (byte) 0);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key other && hash == other.hash && Arrays.equals(bytes, other.bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/** Key schedules in access order, guarded by the stripe's monitor. */
+	private final class Stripe extends LinkedHashMap<Key, AES> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, AES> eldest) {
+			if (size() <= capacity) {
+				return false;
+			}
+			eldest.getKey().zeroize();
+			evictions.increment();
+			return true;
+		}
+	}
+}
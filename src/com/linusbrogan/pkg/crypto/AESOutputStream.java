@@ -0,0 +1,65 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encrypts everything written to it, in the layout of AES_CBC.encrypt and AES_CTR.encrypt: the IV, then the ciphertext.
+ * The final block is only written on close, since CBC pads it.
+ * With AES_GCM, this is also the layout of AES_GCM.encrypt without AAD, and the tag is written on close.
+ */
+public class AESOutputStream extends FilterOutputStream {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final IncrementalCipher cipher;
+	private final byte[] output = new byte[BUFFER_SIZE + 2 * AES.BLOCK_SIZE];
+	private final byte[] single = new byte[1];
+	private boolean closed;
+
+	/**
+	 * Writes the IV to out.
+	 * @param out destination of the IV and ciphertext
+	 * @param cipher cipher for the mode, such as AES_CTR.newIncrementalCipher()
+	 * @param iv initialization vector of the cipher's IV length
+	 */
+	public AESOutputStream(OutputStream out, IncrementalCipher cipher, byte[] iv) throws IOException {
+		super(out);
+		assert iv.length == cipher.getIVLength();
+		this.cipher = cipher;
+		cipher.init(true, iv);
+		out.write(iv);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		while (len > 0) {
+			int n = Math.min(len, BUFFER_SIZE);
+			int written = cipher.update(b, off, n, output, 0);
+			out.write(output, 0, written);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/** Writes the final block and closes the underlying stream. */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			int written = cipher.doFinal(output, 0);
+			out.write(output, 0, written);
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Decrypts data in the layout of AES_CBC.encrypt and AES_CTR.encrypt: the IV, then the ciphertext.
+ * The IV, of the cipher's IV length, is read before the first byte is returned.
+ * With AES_GCM, this is also the layout of AES_GCM.encrypt without AAD, and the tag is only checked at the end of the message:
+ * the read that reaches the end throws SecurityException if the tag does not match, and everything read before must be discarded.
+ */
+public class AESReadableChannel implements ReadableByteChannel {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final ReadableByteChannel channel;
+	private final IncrementalCipher cipher;
+	private final ByteBuffer iv;
+	private final byte[] input = new byte[BUFFER_SIZE];
+	private final ByteBuffer inputBuffer = ByteBuffer.wrap(input);
+	private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE + 2 * AES.BLOCK_SIZE).limit(0);
+	private boolean initialized;
+	private boolean finished;
+	private boolean open = true;
+
+	/**
+	 * @param channel source of the IV and ciphertext
+	 * @param cipher cipher for the mode, such as AES_CTR.newIncrementalCipher()
+	 */
+	public AESReadableChannel(ReadableByteChannel channel, IncrementalCipher cipher) {
+		this.channel = channel;
+		this.cipher = cipher;
+		iv = ByteBuffer.allocate(cipher.getIVLength());
+	}
+
+	/**
+	 * Reads decrypted bytes into dst.
+	 * @return number of bytes read, which may be 0 if a non-blocking channel has no input yet, or -1 at the end of the message
+	 */
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (!open) throw new ClosedChannelException();
+		if (!dst.hasRemaining()) return 0;
+		while (!output.hasRemaining()) {
+			int filled = fill();
+			if (filled < 0) return -1;
+			if (filled == 0) return 0;
+		}
+		int n = Math.min(dst.remaining(), output.remaining());
+		int limit = output.limit();
+		output.limit(output.position() + n);
+		dst.put(output);
+		output.limit(limit);
+		return n;
+	}
+
+	/**
+	 * Decrypts the next piece of input.
+	 * @return -1 at the end of the message, 0 if the channel had no input, or 1 otherwise
+	 */
+	private int fill() throws IOException {
+		if (finished) return -1;
+		if (!initialized) {
+			while (iv.hasRemaining()) {
+				int n = channel.read(iv);
+				if (n < 0) throw new EOFException("Missing IV");
+				if (n == 0) return 0;
+			}
+			cipher.init(false, iv.array());
+			initialized = true;
+		}
+		inputBuffer.clear();
+		int n = channel.read(inputBuffer);
+		if (n == 0) return 0;
+		int written;
+		if (n < 0) {
+			written = cipher.doFinal(output.array(), 0);
+			finished = true;
+		} else {
+			written = cipher.update(input, 0, n, output.array(), 0);
+		}
+		output.position(0).limit(written);
+		return 1;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		open = false;
+		channel.close();
+	}
+}
@@ -0,0 +1,78 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Encrypts everything written to it, in the layout of AES_CBC.encrypt and AES_CTR.encrypt: the IV, then the ciphertext.
+ * The final block is only written on close, since CBC pads it.
+ * With AES_GCM, this is also the layout of AES_GCM.encrypt without AAD, and the tag is written on close.
+ * Each write consumes all of its input, so the underlying channel must be in blocking mode, and stay in it.
+ */
+public class AESWritableChannel implements WritableByteChannel {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final WritableByteChannel channel;
+	private final IncrementalCipher cipher;
+	private final byte[] input = new byte[BUFFER_SIZE];
+	private final byte[] output = new byte[BUFFER_SIZE + 2 * AES.BLOCK_SIZE];
+	private boolean open = true;
+
+	/**
+	 * Writes the IV to channel.
+	 * @param channel destination of the IV and ciphertext
+	 * @param cipher cipher for the mode, such as AES_CTR.newIncrementalCipher()
+	 * @param iv initialization vector of the cipher's IV length
+	 * @throws IllegalBlockingModeException if channel is a selectable channel in non-blocking mode
+	 */
+	public AESWritableChannel(WritableByteChannel channel, IncrementalCipher cipher, byte[] iv) throws IOException {
+		assert iv.length == cipher.getIVLength();
+		if (channel instanceof SelectableChannel selectable && !selectable.isBlocking()) throw new IllegalBlockingModeException();
+		this.channel = channel;
+		this.cipher = cipher;
+		cipher.init(true, iv);
+		writeFully(ByteBuffer.wrap(iv.clone()));
+	}
+
+	/** Consumes all of src, writing the ciphertext that is ready. */
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (!open) throw new ClosedChannelException();
+		int length = src.remaining();
+		while (src.hasRemaining()) {
+			int n = Math.min(src.remaining(), BUFFER_SIZE);
+			src.get(input, 0, n);
+			int written = cipher.update(input, 0, n, output, 0);
+			writeFully(ByteBuffer.wrap(output, 0, written));
+		}
+		return length;
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	/** Writes the final block and closes the underlying channel. */
+	@Override
+	public void close() throws IOException {
+		if (!open) return;
+		open = false;
+		try {
+			int written = cipher.doFinal(output, 0);
+			writeFully(ByteBuffer.wrap(output, 0, written));
+		} finally {
+			channel.close();
+		}
+	}
+}
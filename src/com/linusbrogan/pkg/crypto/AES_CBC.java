@@ -1,12 +1,21 @@
 package com.linusbrogan.pkg.crypto;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements AES-CBC, with padding and prepended IV.
  */
 public class AES_CBC {
 	private static final int BYTE_MASK = 0xff;
+	/** Ciphertexts shorter than this many bytes are decrypted on the calling thread by decryptParallel. */
+	public static final int PARALLEL_THRESHOLD = 1 << 20;
+	/** Largest number of blocks decrypted by one fork-join task. */
+	static final int CHUNK_BLOCKS = (1 << 18) / AES.BLOCK_SIZE;
 
 	private final AES aes;
 
@@ -38,28 +47,96 @@ public class AES_CBC {
 		System.arraycopy(iv, 0, ciphertext, cursor, iv.length);
 		cursor += iv.length;
 
-		// Encrypt full blocks.
+		// Encrypt full blocks in place, chaining from the previous ciphertext block.
+		int previous = 0;
 		for (int i = 0; i < message.length / AES.BLOCK_SIZE; i++) {
-			byte[] m_i = Arrays.copyOfRange(message, i * AES.BLOCK_SIZE, (i + 1) * AES.BLOCK_SIZE);
-			byte[] c_i = aes.encrypt(Bytes.xor(m_i, iv));
-			System.arraycopy(c_i, 0, ciphertext, cursor, c_i.length);
-			cursor += c_i.length;
-			iv = c_i;
+			Bytes.xorInto(message, i * AES.BLOCK_SIZE, ciphertext, previous, ciphertext, cursor, AES.BLOCK_SIZE);
+			aes.encryptBlock(ciphertext, cursor, ciphertext, cursor);
+			previous = cursor;
+			cursor += AES.BLOCK_SIZE;
 		}
 
 		// Pad the final block.
 		int remainder = message.length % AES.BLOCK_SIZE;
 		byte pad = (byte) (AES.BLOCK_SIZE - remainder);
-		byte[] m_f = new byte[AES.BLOCK_SIZE];
-		for (int i = 0; i < AES.BLOCK_SIZE; i++) {
-			m_f[i] = i < remainder ? message[message.length - remainder + i] : pad;
-		}
-		byte[] c_f = aes.encrypt(Bytes.xor(m_f, iv));
-		System.arraycopy(c_f, 0, ciphertext, cursor, c_f.length);
+		System.arraycopy(message, message.length - remainder, ciphertext, cursor, remainder);
+		Arrays.fill(ciphertext, cursor + remainder, cursor + AES.BLOCK_SIZE, pad);
+		Bytes.xorInto(ciphertext, cursor, ciphertext, previous, ciphertext, cursor, AES.BLOCK_SIZE);
+		aes.encryptBlock(ciphertext, cursor, ciphertext, cursor);
 
 		return ciphertext;
 	}
 
+	/**
+	 * Encrypts the remaining bytes of message into ciphertext, advancing both buffers.
+	 * Heap and direct buffers are read and written in place.
+	 * @param iv 16 byte initialization vector
+	 * @param message data to encrypt
+	 * @param ciphertext receives the initialization vector followed by the padded ciphertext
+	 */
+	public void encrypt(byte[] iv, ByteBuffer message, ByteBuffer ciphertext) {
+		assert iv.length == AES.BLOCK_SIZE;
+		int length = message.remaining();
+		int paddedMessageLength = ((length / AES.BLOCK_SIZE) + 1) * AES.BLOCK_SIZE;
+		if (ciphertext.remaining() < iv.length + paddedMessageLength) throw new BufferOverflowException();
+
+		// Prepend IV, which is chained to the first block.
+		ciphertext.put(iv);
+		int mPos = message.position();
+		int cPos = ciphertext.position();
+
+		// Encrypt full blocks in place in the output.
+		for (int i = 0; i < length / AES.BLOCK_SIZE; i++) {
+			Bytes.xorInto(message, mPos, ciphertext, cPos - AES.BLOCK_SIZE, ciphertext, cPos, AES.BLOCK_SIZE);
+			aes.encryptBlock(ciphertext, cPos, ciphertext, cPos);
+			mPos += AES.BLOCK_SIZE;
+			cPos += AES.BLOCK_SIZE;
+		}
+
+		// Pad the final block.
+		int remainder = length % AES.BLOCK_SIZE;
+		byte pad = (byte) (AES.BLOCK_SIZE - remainder);
+		ciphertext.put(cPos, message, mPos, remainder);
+		for (int i = remainder; i < AES.BLOCK_SIZE; i++) {
+			ciphertext.put(cPos + i, pad);
+		}
+		Bytes.xorInto(ciphertext, cPos, ciphertext, cPos - AES.BLOCK_SIZE, ciphertext, cPos, AES.BLOCK_SIZE);
+		aes.encryptBlock(ciphertext, cPos, ciphertext, cPos);
+
+		message.position(message.limit());
+		ciphertext.position(cPos + AES.BLOCK_SIZE);
+	}
+
+	/**
+	 * Decrypts the remaining bytes of ciphertext into message, advancing both buffers.
+	 * Heap and direct buffers are read and written in place.
+	 * The pad is written to message past its final position, so it needs room for the padded length.
+	 * @param ciphertext initialization vector followed by the padded ciphertext
+	 * @param message receives the plaintext message
+	 */
+	public void decrypt(ByteBuffer ciphertext, ByteBuffer message) {
+		assert ciphertext.remaining() % AES.BLOCK_SIZE == 0;
+		if (ciphertext.remaining() <= AES.BLOCK_SIZE) throw new BufferUnderflowException();
+		int paddedMessageLength = ciphertext.remaining() - AES.BLOCK_SIZE;
+		if (message.remaining() < paddedMessageLength) throw new BufferOverflowException();
+
+		int mPos = message.position();
+		aes.decryptChained(ciphertext, ciphertext.position() + AES.BLOCK_SIZE, message, mPos, paddedMessageLength / AES.BLOCK_SIZE);
+
+		// Remove the pad.
+		int pad = message.get(mPos + paddedMessageLength - 1) & BYTE_MASK;
+		assert pad <= AES.BLOCK_SIZE;
+		ciphertext.position(ciphertext.limit());
+		message.position(mPos + paddedMessageLength - pad);
+	}
+
+	/**
+	 * @return a cipher that encrypts or decrypts a message in pieces, with padding but without the prepended IV
+	 */
+	public IncrementalCipher newIncrementalCipher() {
+		return new Incremental(aes);
+	}
+
 	/**
 	 * @param ciphertext padded ciphertext prepended with the initialization vector
 	 * @return plaintext message
@@ -68,26 +145,221 @@ public class AES_CBC {
 		assert ciphertext.length % AES.BLOCK_SIZE == 0;
 		assert ciphertext.length > AES.BLOCK_SIZE;
 
-		// Extract IV.
-		byte[] iv = Arrays.copyOfRange(ciphertext, 0, AES.BLOCK_SIZE);
-		int cCursor = AES.BLOCK_SIZE;
-
-		// Decrypt padded message.
-		int paddedMessageLength = (ciphertext.length / AES.BLOCK_SIZE - 1) * AES.BLOCK_SIZE;
-		byte[] paddedMessage = new byte[paddedMessageLength];
-		int mCursor = 0;
-		while (cCursor < ciphertext.length) {
-			byte[] c_i = Arrays.copyOfRange(ciphertext, cCursor, cCursor + AES.BLOCK_SIZE);
-			cCursor += AES.BLOCK_SIZE;
-			byte[] m_i = Bytes.xor(iv, aes.decrypt(c_i));
-			System.arraycopy(m_i, 0, paddedMessage, mCursor, m_i.length);
-			mCursor += m_i.length;
-			iv = c_i;
+		// Decrypt padded message. The IV is the first ciphertext block.
+		byte[] paddedMessage = new byte[ciphertext.length - AES.BLOCK_SIZE];
+		aes.decryptChained(ciphertext, AES.BLOCK_SIZE, paddedMessage, 0, paddedMessage.length / AES.BLOCK_SIZE);
+
+		return removePad(paddedMessage);
+	}
+
+	/**
+	 * Decrypts like decrypt, splitting large ciphertexts across the common fork-join pool.
+	 * @param ciphertext padded ciphertext prepended with the initialization vector
+	 * @return plaintext message
+	 */
+	public byte[] decryptParallel(byte[] ciphertext) {
+		return decryptParallel(ciphertext, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Decrypts like decrypt, splitting ciphertexts of at least PARALLEL_THRESHOLD bytes across pool.
+	 * Each message block depends only on two ciphertext blocks, so chunks need no coordination.
+	 * @param ciphertext padded ciphertext prepended with the initialization vector
+	 * @param pool pool that runs the chunks
+	 * @return plaintext message
+	 */
+	public byte[] decryptParallel(byte[] ciphertext, ForkJoinPool pool) {
+		assert ciphertext.length % AES.BLOCK_SIZE == 0;
+		assert ciphertext.length > AES.BLOCK_SIZE;
+
+		byte[] paddedMessage = new byte[ciphertext.length - AES.BLOCK_SIZE];
+		int blocks = paddedMessage.length / AES.BLOCK_SIZE;
+		if (ciphertext.length < PARALLEL_THRESHOLD) {
+			aes.decryptChained(ciphertext, AES.BLOCK_SIZE, paddedMessage, 0, blocks);
+		} else {
+			pool.invoke(new DecryptTask(aes, ciphertext, paddedMessage, 0, blocks));
 		}
 
-		// Remove the pad.
+		return removePad(paddedMessage);
+	}
+
+	private static byte[] removePad(byte[] paddedMessage) {
 		int pad = paddedMessage[paddedMessage.length - 1] & BYTE_MASK;
 		assert pad <= AES.BLOCK_SIZE;
-		return Arrays.copyOfRange(paddedMessage, 0, paddedMessageLength - pad);
+		return Arrays.copyOfRange(paddedMessage, 0, paddedMessage.length - pad);
+	}
+
+	/**
+	 * CBC mode over pieces of any length.
+	 * Encryption pads the final block in doFinal.
+	 * Decryption always holds back the last full block, since it holds the pad, so in and out must not overlap.
+	 */
+	private static class Incremental implements IncrementalCipher {
+		private final AES aes;
+		/** Previous ciphertext block, which starts as the IV. */
+		private final byte[] chain = new byte[AES.BLOCK_SIZE];
+		/** Input not yet processed. */
+		private final byte[] buffer = new byte[AES.BLOCK_SIZE];
+		private int bufferLength;
+		private boolean encrypt;
+		private boolean initialized;
+
+		Incremental(AES aes) {
+			this.aes = aes;
+		}
+
+		@Override
+		public int getIVLength() {
+			return AES.BLOCK_SIZE;
+		}
+
+		@Override
+		public void init(boolean encrypt, byte[] iv) {
+			assert iv.length == AES.BLOCK_SIZE;
+			System.arraycopy(iv, 0, chain, 0, AES.BLOCK_SIZE);
+			bufferLength = 0;
+			this.encrypt = encrypt;
+			initialized = true;
+		}
+
+		@Override
+		public int getOutputSize(int length) {
+			int total = bufferLength + length;
+			return encrypt ? (total / AES.BLOCK_SIZE + 1) * AES.BLOCK_SIZE : total;
+		}
+
+		@Override
+		public int update(byte[] in, int inOff, int length, byte[] out, int outOff) {
+			assert initialized;
+			return encrypt ? encryptUpdate(in, inOff, length, out, outOff) : decryptUpdate(in, inOff, length, out, outOff);
+		}
+
+		private int encryptUpdate(byte[] in, int inOff, int length, byte[] out, int outOff) {
+			int written = 0;
+
+			// Complete a buffered block.
+			if (bufferLength > 0) {
+				int n = Math.min(AES.BLOCK_SIZE - bufferLength, length);
+				System.arraycopy(in, inOff, buffer, bufferLength, n);
+				bufferLength += n;
+				inOff += n;
+				length -= n;
+				if (bufferLength < AES.BLOCK_SIZE) {
+					return 0;
+				}
+				encryptChained(buffer, 0, out, outOff);
+				written += AES.BLOCK_SIZE;
+				bufferLength = 0;
+			}
+
+			// Encrypt full blocks directly.
+			while (length >= AES.BLOCK_SIZE) {
+				encryptChained(in, inOff, out, outOff + written);
+				written += AES.BLOCK_SIZE;
+				inOff += AES.BLOCK_SIZE;
+				length -= AES.BLOCK_SIZE;
+			}
+
+			// Keep the tail for the next update or the pad.
+			System.arraycopy(in, inOff, buffer, 0, length);
+			bufferLength = length;
+			return written;
+		}
+
+		private void encryptChained(byte[] in, int inOff, byte[] out, int outOff) {
+			Bytes.xorInto(in, inOff, chain, 0, out, outOff, AES.BLOCK_SIZE);
+			aes.encryptBlock(out, outOff, out, outOff);
+			System.arraycopy(out, outOff, chain, 0, AES.BLOCK_SIZE);
+		}
+
+		private int decryptUpdate(byte[] in, int inOff, int length, byte[] out, int outOff) {
+			int written = 0;
+			while (length > 0) {
+				// A full buffered block is not the last one once more input arrives.
+				if (bufferLength == AES.BLOCK_SIZE) {
+					aes.decryptBlock(buffer, 0, out, outOff + written);
+					Bytes.xorInto(out, outOff + written, chain, 0, out, outOff + written, AES.BLOCK_SIZE);
+					System.arraycopy(buffer, 0, chain, 0, AES.BLOCK_SIZE);
+					written += AES.BLOCK_SIZE;
+					bufferLength = 0;
+				}
+
+				// Decrypt all but the last block directly, chaining the first block to the previous one.
+				if (bufferLength == 0 && length > AES.BLOCK_SIZE) {
+					int blocks = (length - 1) / AES.BLOCK_SIZE;
+					aes.decryptBlock(in, inOff, out, outOff + written);
+					Bytes.xorInto(out, outOff + written, chain, 0, out, outOff + written, AES.BLOCK_SIZE);
+					if (blocks > 1) {
+						aes.decryptChained(in, inOff + AES.BLOCK_SIZE, out, outOff + written + AES.BLOCK_SIZE, blocks - 1);
+					}
+					System.arraycopy(in, inOff + (blocks - 1) * AES.BLOCK_SIZE, chain, 0, AES.BLOCK_SIZE);
+					written += blocks * AES.BLOCK_SIZE;
+					inOff += blocks * AES.BLOCK_SIZE;
+					length -= blocks * AES.BLOCK_SIZE;
+				}
+
+				int n = Math.min(AES.BLOCK_SIZE - bufferLength, length);
+				System.arraycopy(in, inOff, buffer, bufferLength, n);
+				bufferLength += n;
+				inOff += n;
+				length -= n;
+			}
+			return written;
+		}
+
+		@Override
+		public int doFinal(byte[] out, int outOff) {
+			assert initialized;
+			initialized = false;
+			if (encrypt) {
+				// Pad the final block.
+				byte pad = (byte) (AES.BLOCK_SIZE - bufferLength);
+				Arrays.fill(buffer, bufferLength, AES.BLOCK_SIZE, pad);
+				encryptChained(buffer, 0, out, outOff);
+				return AES.BLOCK_SIZE;
+			}
+
+			// Decrypt the final block in place and remove the pad.
+			assert bufferLength == AES.BLOCK_SIZE;
+			aes.decryptBlock(buffer, 0, buffer, 0);
+			Bytes.xorInto(buffer, 0, chain, 0, buffer, 0, AES.BLOCK_SIZE);
+			int pad = buffer[AES.BLOCK_SIZE - 1] & BYTE_MASK;
+			assert pad <= AES.BLOCK_SIZE;
+			System.arraycopy(buffer, 0, out, outOff, AES.BLOCK_SIZE - pad);
+			return AES.BLOCK_SIZE - pad;
+		}
+	}
+
+	/** Decrypts a range of blocks, forking halves until each is at most CHUNK_BLOCKS blocks. */
+	private static class DecryptTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final AES aes;
+		private final byte[] ciphertext;
+		private final byte[] paddedMessage;
+		private final int firstBlock;
+		private final int blocks;
+
+		DecryptTask(AES aes, byte[] ciphertext, byte[] paddedMessage, int firstBlock, int blocks) {
+			this.aes = aes;
+			this.ciphertext = ciphertext;
+			this.paddedMessage = paddedMessage;
+			this.firstBlock = firstBlock;
+			this.blocks = blocks;
+		}
+
+		@Override
+		protected void compute() {
+			if (blocks <= CHUNK_BLOCKS) {
+				int offset = firstBlock * AES.BLOCK_SIZE;
+				aes.decryptChained(ciphertext, AES.BLOCK_SIZE + offset, paddedMessage, offset, blocks);
+				return;
+			}
+			int half = blocks / 2;
+			invokeAll(
+				new DecryptTask(aes, ciphertext, paddedMessage, firstBlock, half),
+				new DecryptTask(aes, ciphertext, paddedMessage, firstBlock + half, blocks - half)
+			);
+		}
 	}
 }
@@ -1,12 +1,27 @@
 package com.linusbrogan.pkg.crypto;
 
-import java.util.Arrays;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements AES-CTR, with prepended IV.
  */
 public class AES_CTR {
-	private static final int BYTE_MASK = 0xff;
+	/** Messages shorter than this many bytes are processed on the calling thread by the parallel methods. */
+	public static final int PARALLEL_THRESHOLD = 1 << 20;
+	/** Largest number of bytes processed by one fork-join task, which is a multiple of the block size. */
+	static final int CHUNK_SIZE = 1 << 18;
+	/** Largest number of bytes of a file mapped at once by encryptFile and decryptFile, which is a multiple of the block size. */
+	static final int MAP_WINDOW = 1 << 26;
 
 	private final AES aes;
 
@@ -35,21 +50,8 @@ public class AES_CTR {
 		System.arraycopy(iv, 0, ciphertext, cursor, iv.length);
 		cursor += iv.length;
 
-		// Encrypt full blocks.
-		for (int i = 0; i < message.length / AES.BLOCK_SIZE; i++) {
-			byte[] m_i = Arrays.copyOfRange(message, i * AES.BLOCK_SIZE, (i + 1) * AES.BLOCK_SIZE);
-			byte[] c_i = Bytes.xor(m_i, aes.encrypt(iv));
-			System.arraycopy(c_i, 0, ciphertext, cursor, c_i.length);
-			cursor += c_i.length;
-			iv = incrementBlock(iv);
-		}
-
-		// Encrypt the final block.
-		int remainder = message.length % AES.BLOCK_SIZE;
-		byte[] m_f = new byte[AES.BLOCK_SIZE];
-		System.arraycopy(message, message.length - remainder, m_f, 0, remainder);
-		byte[] c_f = Bytes.xor(m_f, aes.encrypt(iv));
-		System.arraycopy(c_f, 0, ciphertext, cursor, remainder);
+		// Encrypt the message, including a final partial block.
+		aes.xorKeystream(counterHi(iv), counterLo(iv), message, 0, ciphertext, cursor, message.length);
 
 		return ciphertext;
 	}
@@ -61,35 +63,396 @@ public class AES_CTR {
 	public byte[] decrypt(byte[] ciphertext) {
 		assert ciphertext.length >= AES.BLOCK_SIZE;
 
-		// Extract IV.
-		byte[] iv = Arrays.copyOfRange(ciphertext, 0, AES.BLOCK_SIZE);
-		int cCursor = AES.BLOCK_SIZE;
-
-		// Decrypt message.
-		byte[] message = new byte[ciphertext.length - iv.length];
-		int mCursor = 0;
-		while (cCursor < ciphertext.length) {
-			byte[] c_i = Arrays.copyOfRange(ciphertext, cCursor, Math.min(cCursor + AES.BLOCK_SIZE, ciphertext.length));
-			cCursor += AES.BLOCK_SIZE;
-			byte[] m_i = Bytes.xor(c_i, Arrays.copyOfRange(aes.encrypt(iv), 0, c_i.length));
-			System.arraycopy(m_i, 0, message, mCursor, m_i.length);
-			mCursor += m_i.length;
-			iv = incrementBlock(iv);
+		// Decrypt message. The IV is the first counter block.
+		byte[] message = new byte[ciphertext.length - AES.BLOCK_SIZE];
+		aes.xorKeystream(counterHi(ciphertext), counterLo(ciphertext), ciphertext, AES.BLOCK_SIZE, message, 0, message.length);
+
+		return message;
+	}
+
+	/**
+	 * Decrypts part of a message without processing the blocks before it.
+	 * @param ciphertext ciphertext prepended with the initialization vector
+	 * @param offset position in the plaintext message of the first byte to decrypt
+	 * @param length number of bytes to decrypt
+	 * @return plaintext message bytes offset through offset + length - 1
+	 */
+	public byte[] decryptRange(byte[] ciphertext, int offset, int length) {
+		byte[] message = new byte[length];
+		decryptRange(ciphertext, offset, length, message, 0);
+		return message;
+	}
+
+	/**
+	 * Decrypts part of a message into a caller buffer, in time proportional to length.
+	 * The counter for the block holding offset is computed directly as the IV plus the block index.
+	 * @param ciphertext ciphertext prepended with the initialization vector
+	 * @param offset position in the plaintext message of the first byte to decrypt
+	 * @param length number of bytes to decrypt
+	 * @param message receives the plaintext bytes at messageOff
+	 */
+	public void decryptRange(byte[] ciphertext, int offset, int length, byte[] message, int messageOff) {
+		assert ciphertext.length >= AES.BLOCK_SIZE;
+		assert offset >= 0 && length >= 0 && offset + length <= ciphertext.length - AES.BLOCK_SIZE;
+
+		long lo = counterLo(ciphertext) + offset / AES.BLOCK_SIZE;
+		long hi = addCarry(counterHi(ciphertext), counterLo(ciphertext), lo);
+
+		// Decrypt the tail of a block that the range starts inside.
+		int skip = offset % AES.BLOCK_SIZE;
+		int done = 0;
+		if (skip > 0 && length > 0) {
+			byte[] block = new byte[AES.BLOCK_SIZE];
+			done = Math.min(AES.BLOCK_SIZE - skip, length);
+			System.arraycopy(ciphertext, AES.BLOCK_SIZE + offset, block, skip, done);
+			aes.xorKeystream(hi, lo, block, 0, block, 0, AES.BLOCK_SIZE);
+			System.arraycopy(block, skip, message, messageOff, done);
+			lo++;
+			if (lo == 0) {
+				hi++;
+			}
+		}
+
+		// Decrypt the rest from a block boundary.
+		aes.xorKeystream(hi, lo, ciphertext, AES.BLOCK_SIZE + offset + done, message, messageOff + done, length - done);
+	}
+
+	/**
+	 * Encrypts the remaining bytes of message into ciphertext, advancing both buffers.
+	 * Heap and direct buffers are read and written in place.
+	 * @param iv 16 byte initialization vector
+	 * @param message data to encrypt
+	 * @param ciphertext receives the initialization vector followed by the ciphertext
+	 */
+	public void encrypt(byte[] iv, ByteBuffer message, ByteBuffer ciphertext) {
+		assert iv.length == AES.BLOCK_SIZE;
+		int length = message.remaining();
+		if (ciphertext.remaining() < iv.length + length) throw new BufferOverflowException();
+
+		ciphertext.put(iv);
+		aes.xorKeystream(counterHi(iv), counterLo(iv), message, message.position(), ciphertext, ciphertext.position(), length);
+		message.position(message.position() + length);
+		ciphertext.position(ciphertext.position() + length);
+	}
+
+	/**
+	 * Decrypts the remaining bytes of ciphertext into message, advancing both buffers.
+	 * Heap and direct buffers are read and written in place.
+	 * @param ciphertext initialization vector followed by the ciphertext
+	 * @param message receives the plaintext message
+	 */
+	public void decrypt(ByteBuffer ciphertext, ByteBuffer message) {
+		if (ciphertext.remaining() < AES.BLOCK_SIZE) throw new BufferUnderflowException();
+		int length = ciphertext.remaining() - AES.BLOCK_SIZE;
+		if (message.remaining() < length) throw new BufferOverflowException();
+
+		int ivPos = ciphertext.position();
+		long counterHi = Bytes.getLong(ciphertext, ivPos);
+		long counterLo = Bytes.getLong(ciphertext, ivPos + 8);
+		aes.xorKeystream(counterHi, counterLo, ciphertext, ivPos + AES.BLOCK_SIZE, message, message.position(), length);
+		ciphertext.position(ciphertext.limit());
+		message.position(message.position() + length);
+	}
+
+	/**
+	 * Encrypts a file into another file in the layout of encrypt: the IV, then the ciphertext.
+	 * Both files are memory-mapped a window at a time, so the data never passes through the Java heap.
+	 * @param in file to encrypt
+	 * @param out file to create or replace
+	 * @param iv 16 byte initialization vector
+	 */
+	public void encryptFile(Path in, Path out, byte[] iv) throws IOException {
+		encryptFile(in, out, iv, null);
+	}
+
+	/**
+	 * Encrypts a file like encryptFile, splitting each window of at least PARALLEL_THRESHOLD bytes across pool.
+	 * @param pool pool that runs the chunks, or null to stay on the calling thread
+	 */
+	public void encryptFile(Path in, Path out, byte[] iv, ForkJoinPool pool) throws IOException {
+		assert iv.length == AES.BLOCK_SIZE;
+		try (
+			FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+			FileChannel output = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)
+		) {
+			ByteBuffer header = ByteBuffer.wrap(iv.clone());
+			while (header.hasRemaining()) {
+				output.write(header, header.position());
+			}
+			xorKeystream(counterHi(iv), counterLo(iv), input, 0, output, AES.BLOCK_SIZE, input.size(), pool);
+		}
+	}
+
+	/**
+	 * Decrypts a file in the layout of encrypt into another file.
+	 * Both files are memory-mapped a window at a time, so the data never passes through the Java heap.
+	 * @param in file holding the IV and ciphertext
+	 * @param out file to create or replace
+	 */
+	public void decryptFile(Path in, Path out) throws IOException {
+		decryptFile(in, out, null);
+	}
+
+	/**
+	 * Decrypts a file like decryptFile, splitting each window of at least PARALLEL_THRESHOLD bytes across pool.
+	 * @param pool pool that runs the chunks, or null to stay on the calling thread
+	 */
+	public void decryptFile(Path in, Path out, ForkJoinPool pool) throws IOException {
+		try (
+			FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+			FileChannel output = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)
+		) {
+			ByteBuffer iv = ByteBuffer.allocate(AES.BLOCK_SIZE);
+			while (iv.hasRemaining()) {
+				if (input.read(iv, iv.position()) < 0) throw new EOFException("Missing IV");
+			}
+			xorKeystream(counterHi(iv.array()), counterLo(iv.array()), input, AES.BLOCK_SIZE, output, 0, input.size() - AES.BLOCK_SIZE, pool);
+		}
+	}
+
+	/** Maps MAP_WINDOW bytes of each file at a time and applies the keystream between the mappings. */
+	private void xorKeystream(long counterHi, long counterLo, FileChannel in, long inPos, FileChannel out, long outPos, long length, ForkJoinPool pool) throws IOException {
+		for (long done = 0; done < length; done += MAP_WINDOW) {
+			int window = (int) Math.min(MAP_WINDOW, length - done);
+			MappedByteBuffer source = in.map(FileChannel.MapMode.READ_ONLY, inPos + done, window);
+			MappedByteBuffer destination = out.map(FileChannel.MapMode.READ_WRITE, outPos + done, window);
+			long lo = counterLo + done / AES.BLOCK_SIZE;
+			long hi = addCarry(counterHi, counterLo, lo);
+			if (pool == null || window < PARALLEL_THRESHOLD) {
+				aes.xorKeystream(hi, lo, source, 0, destination, 0, window);
+			} else {
+				pool.invoke(new KeystreamTask(aes, hi, lo, source, 0, destination, 0, window));
+			}
 		}
+	}
+
+	/**
+	 * @return a cipher that encrypts or decrypts a message in pieces, without the prepended IV
+	 */
+	public IncrementalCipher newIncrementalCipher() {
+		return new Incremental(aes);
+	}
+
+	/**
+	 * Encrypts like encrypt, splitting large messages across the common fork-join pool.
+	 * @param iv 16 byte initialization vector
+	 * @param message data to encrypt
+	 * @return ciphertext prepended with the initialization vector, identical to encrypt
+	 */
+	public byte[] encryptParallel(byte[] iv, byte[] message) {
+		return encryptParallel(iv, message, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Encrypts like encrypt, splitting messages of at least PARALLEL_THRESHOLD bytes across pool.
+	 * @param iv 16 byte initialization vector
+	 * @param message data to encrypt
+	 * @param pool pool that runs the chunks
+	 * @return ciphertext prepended with the initialization vector, identical to encrypt
+	 */
+	public byte[] encryptParallel(byte[] iv, byte[] message, ForkJoinPool pool) {
+		assert iv.length == AES.BLOCK_SIZE;
+
+		byte[] ciphertext = new byte[iv.length + message.length];
+		System.arraycopy(iv, 0, ciphertext, 0, iv.length);
+		xorKeystream(counterHi(iv), counterLo(iv), message, 0, ciphertext, iv.length, message.length, pool);
+		return ciphertext;
+	}
+
+	/**
+	 * Decrypts like decrypt, splitting large messages across the common fork-join pool.
+	 * @param ciphertext ciphertext prepended with the initialization vector
+	 * @return plaintext message
+	 */
+	public byte[] decryptParallel(byte[] ciphertext) {
+		return decryptParallel(ciphertext, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Decrypts like decrypt, splitting messages of at least PARALLEL_THRESHOLD bytes across pool.
+	 * @param ciphertext ciphertext prepended with the initialization vector
+	 * @param pool pool that runs the chunks
+	 * @return plaintext message
+	 */
+	public byte[] decryptParallel(byte[] ciphertext, ForkJoinPool pool) {
+		assert ciphertext.length >= AES.BLOCK_SIZE;
 
+		byte[] message = new byte[ciphertext.length - AES.BLOCK_SIZE];
+		xorKeystream(counterHi(ciphertext), counterLo(ciphertext), ciphertext, AES.BLOCK_SIZE, message, 0, message.length, pool);
 		return message;
 	}
 
-	static byte[] incrementBlock(byte[] block) {
-		assert block.length == AES.BLOCK_SIZE;
-		byte[] next = Arrays.copyOf(block, block.length);
-		int i = next.length - 1;
-		next[i] += 1;
-		while (next[i] == 0 && i > 0) {
-			i--;
-			next[i] += 1;
+	private void xorKeystream(long counterHi, long counterLo, byte[] in, int inOff, byte[] out, int outOff, int length, ForkJoinPool pool) {
+		if (length < PARALLEL_THRESHOLD) {
+			aes.xorKeystream(counterHi, counterLo, in, inOff, out, outOff, length);
+		} else {
+			pool.invoke(new KeystreamTask(aes, counterHi, counterLo, ByteBuffer.wrap(in), inOff, ByteBuffer.wrap(out), outOff, length));
+		}
+	}
+
+	/**
+	 * Applies the keystream to a range of a message, forking halves until each is at most CHUNK_SIZE bytes.
+	 * Every chunk starts on a block boundary, so its first counter is the initial counter plus its block index.
+	 * Chunks only use absolute buffer indices, so they can share the buffers.
+	 */
+	private static class KeystreamTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final AES aes;
+		private final long counterHi;
+		private final long counterLo;
+		private final ByteBuffer in;
+		private final int inPos;
+		private final ByteBuffer out;
+		private final int outPos;
+		private final int length;
+
+		KeystreamTask(AES aes, long counterHi, long counterLo, ByteBuffer in, int inPos, ByteBuffer out, int outPos, int length) {
+			this.aes = aes;
+			this.counterHi = counterHi;
+			this.counterLo = counterLo;
+			this.in = in;
+			this.inPos = inPos;
+			this.out = out;
+			this.outPos = outPos;
+			this.length = length;
+		}
+
+		@Override
+		protected void compute() {
+			if (length <= CHUNK_SIZE) {
+				aes.xorKeystream(counterHi, counterLo, in, inPos, out, outPos, length);
+				return;
+			}
+			int blocks = (length + AES.BLOCK_SIZE - 1) / AES.BLOCK_SIZE;
+			int split = blocks / 2 * AES.BLOCK_SIZE;
+			long splitLo = counterLo + blocks / 2;
+			long splitHi = addCarry(counterHi, counterLo, splitLo);
+			invokeAll(
+				new KeystreamTask(aes, counterHi, counterLo, in, inPos, out, outPos, split),
+				new KeystreamTask(aes, splitHi, splitLo, in, inPos + split, out, outPos + split, length - split)
+			);
+		}
+	}
+
+	/**
+	 * CTR mode over pieces of any length.
+	 * Encryption and decryption are the same operation, and unused keystream from a partial block carries over to the next update.
+	 */
+	private static class Incremental implements IncrementalCipher {
+		private static final byte[] ZERO_BLOCK = new byte[AES.BLOCK_SIZE];
+
+		private final AES aes;
+		/** Keystream of the most recent counter block. */
+		private final byte[] keystream = new byte[AES.BLOCK_SIZE];
+		/** Number of bytes of keystream already used, where BLOCK_SIZE means none are left. */
+		private int keystreamUsed = AES.BLOCK_SIZE;
+		/** Next counter block. */
+		private long counterHi;
+		private long counterLo;
+		private boolean initialized;
+
+		Incremental(AES aes) {
+			this.aes = aes;
+		}
+
+		@Override
+		public int getIVLength() {
+			return AES.BLOCK_SIZE;
+		}
+
+		@Override
+		public void init(boolean encrypt, byte[] iv) {
+			assert iv.length == AES.BLOCK_SIZE;
+			counterHi = counterHi(iv);
+			counterLo = counterLo(iv);
+			keystreamUsed = AES.BLOCK_SIZE;
+			initialized = true;
+		}
+
+		@Override
+		public int getOutputSize(int length) {
+			return length;
+		}
+
+		@Override
+		public int update(byte[] in, int inOff, int length, byte[] out, int outOff) {
+			assert initialized;
+			int done = 0;
+
+			// Use up the keystream left over from the last update.
+			int leftover = Math.min(AES.BLOCK_SIZE - keystreamUsed, length);
+			Bytes.xorInto(in, inOff, keystream, keystreamUsed, out, outOff, leftover);
+			keystreamUsed += leftover;
+			done += leftover;
+
+			// Process full blocks directly.
+			int blocks = (length - done) / AES.BLOCK_SIZE;
+			aes.xorKeystream(counterHi, counterLo, in, inOff + done, out, outOff + done, blocks * AES.BLOCK_SIZE);
+			advance(blocks);
+			done += blocks * AES.BLOCK_SIZE;
+
+			// Start a new keystream block for the tail.
+			if (done < length) {
+				aes.xorKeystream(counterHi, counterLo, ZERO_BLOCK, 0, keystream, 0, AES.BLOCK_SIZE);
+				advance(1);
+				keystreamUsed = length - done;
+				Bytes.xorInto(in, inOff + done, keystream, 0, out, outOff + done, keystreamUsed);
+			}
+			return length;
+		}
+
+		@Override
+		public int doFinal(byte[] out, int outOff) {
+			assert initialized;
+			initialized = false;
+			return 0;
 		}
 
+		private void advance(long blocks) {
+			long next = counterLo + blocks;
+			counterHi = addCarry(counterHi, counterLo, next);
+			counterLo = next;
+		}
+	}
+
+	/**
+	 * @param hi high half of a 128-bit counter
+	 * @param lo low half of the counter before an addition
+	 * @param sum low half of the counter after adding a non-negative number
+	 * @return high half of the counter after the addition
+	 */
+	static long addCarry(long hi, long lo, long sum) {
+		return Long.compareUnsigned(sum, lo) < 0 ? hi + 1 : hi;
+	}
+
+	/** @return the first 8 bytes of the counter block at the start of block */
+	static long counterHi(byte[] block) {
+		return (long) Bytes.BIG_ENDIAN_LONGS.get(block, 0);
+	}
+
+	/** @return the last 8 bytes of the counter block at the start of block */
+	static long counterLo(byte[] block) {
+		return (long) Bytes.BIG_ENDIAN_LONGS.get(block, 8);
+	}
+
+	static byte[] incrementBlock(byte[] block) {
+		return addToBlock(block, 1);
+	}
+
+	/**
+	 * @param block 16 byte counter block
+	 * @param n non-negative number of blocks to advance
+	 * @return a new counter block holding block + n, wrapping around at 2^128
+	 */
+	public static byte[] addToBlock(byte[] block, long n) {
+		assert block.length == AES.BLOCK_SIZE;
+		assert n >= 0;
+		long lo = counterLo(block) + n;
+		long hi = addCarry(counterHi(block), counterLo(block), lo);
+		byte[] next = new byte[AES.BLOCK_SIZE];
+		Bytes.BIG_ENDIAN_LONGS.set(next, 0, hi);
+		Bytes.BIG_ENDIAN_LONGS.set(next, 8, lo);
 		return next;
 	}
 }
@@ -0,0 +1,304 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Implements AES-GCM ([NIST SP 800-38D](https://doi.org/10.6028/NIST.SP.800-38D)), with prepended IV and appended 128-bit tag.
+ * Encryption and GHASH run in a single pass: each chunk of ciphertext is hashed while it is still in cache.
+ */
+public class AES_GCM {
+	/** Length of the IVs of encrypt and decrypt, the 96 bits recommended for efficiency (Sec. 8.2). */
+	public static final int IV_LENGTH = 12;
+	/** Length of the authentication tag. */
+	public static final int TAG_LENGTH = 16;
+	/** Bytes encrypted before they are hashed, small enough to stay in the L1 cache and a multiple of the block size. */
+	static final int CHUNK_SIZE = 1 << 12;
+	/** Largest plaintext, 2^39 - 256 bits (Sec. 5.2.1.1). */
+	static final long MAXIMUM_TEXT_BYTES = (1L << 36) - 32;
+
+	private final AES aes;
+	/** GHASH with the hash subkey H = CIPH_K(0^128), copied for each message. */
+	private final GHASH ghash;
+
+	public AES_GCM(AES aes) {
+		this.aes = aes;
+		byte[] H = new byte[AES.BLOCK_SIZE];
+		aes.encryptBlock(H, 0, H, 0);
+		ghash = new GHASH(H);
+	}
+
+	/**
+	 * @param key AES key of length of 16, 24, or 32 bytes
+	 */
+	public AES_GCM(byte[] key) {
+		this(new AES(key));
+	}
+
+	/**
+	 * Authenticated encryption (Sec. 7.1).
+	 * @param iv 12 byte initialization vector, which must never be reused with the same key
+	 * @param aad additional authenticated data, which is not encrypted or included in the output
+	 * @param message data to encrypt
+	 * @return ciphertext prepended with the initialization vector and followed by the tag
+	 */
+	public byte[] encrypt(byte[] iv, byte[] aad, byte[] message) {
+		assert iv.length == IV_LENGTH;
+		byte[] ciphertext = new byte[IV_LENGTH + message.length + TAG_LENGTH];
+		System.arraycopy(iv, 0, ciphertext, 0, IV_LENGTH);
+		Incremental gcm = newIncrementalCipher();
+		gcm.init(true, iv);
+		gcm.updateAAD(aad, 0, aad.length);
+		int length = gcm.update(message, 0, message.length, ciphertext, IV_LENGTH);
+		gcm.doFinal(ciphertext, IV_LENGTH + length);
+		return ciphertext;
+	}
+
+	/**
+	 * Authenticated decryption (Sec. 7.2). The message is released only once its tag is verified.
+	 * @param aad additional authenticated data given to encrypt
+	 * @param ciphertext ciphertext prepended with the initialization vector and followed by the tag
+	 * @return plaintext message
+	 * @throws SecurityException if the ciphertext, IV, or AAD are not authentic, like Incremental.doFinal
+	 */
+	public byte[] decrypt(byte[] aad, byte[] ciphertext) {
+		assert ciphertext.length >= IV_LENGTH + TAG_LENGTH;
+		Incremental gcm = newIncrementalCipher();
+		gcm.init(false, Arrays.copyOf(ciphertext, IV_LENGTH));
+		gcm.updateAAD(aad, 0, aad.length);
+		byte[] message = new byte[ciphertext.length - IV_LENGTH - TAG_LENGTH];
+		int length = gcm.update(ciphertext, IV_LENGTH, ciphertext.length - IV_LENGTH, message, 0);
+		try {
+			gcm.doFinal(message, length);
+		} catch (SecurityException e) {
+			Arrays.fill(message, (byte) 0);
+			throw e;
+		}
+		return message;
+	}
+
+	/**
+	 * @return a cipher that encrypts or decrypts a message in pieces, without the prepended IV
+	 */
+	public Incremental newIncrementalCipher() {
+		return new Incremental(aes, ghash.copy());
+	}
+
+	/**
+	 * GCM over a message passed in pieces, with the AAD passed first through updateAAD.
+	 * Encryption writes the tag in doFinal.
+	 * Decryption holds back the last TAG_LENGTH bytes, since they may be the tag, so in and out must not overlap.
+	 * It writes plaintext before the tag is checked, so callers must discard that output if doFinal throws.
+	 */
+	public static class Incremental implements IncrementalCipher {
+		private static final byte[] ZERO_BLOCK = new byte[AES.BLOCK_SIZE];
+		private static final long WORD_MASK = 0xffffffffL;
+
+		private final AES aes;
+		private final GHASH ghash;
+		/** Pre-counter block J0 (Sec. 7.1), whose encryption masks the tag. */
+		private final byte[] preCounter = new byte[AES.BLOCK_SIZE];
+		private final byte[] tagMask = new byte[AES.BLOCK_SIZE];
+		/** Keystream of the most recent counter block. */
+		private final byte[] keystream = new byte[AES.BLOCK_SIZE];
+		/** Number of bytes of keystream already used, where BLOCK_SIZE means none are left. */
+		private int keystreamUsed = AES.BLOCK_SIZE;
+		/** Next counter block, whose low 32 bits are incremented modulo 2^32 (inc_32, Sec. 6.2). */
+		private long counterHi;
+		private long counterLo;
+		/** Last bytes of the decryption input, which may be the tag. */
+		private final byte[] held = new byte[TAG_LENGTH];
+		private int heldLength;
+		private long aadLength;
+		private long textLength;
+		private boolean encrypt;
+		private boolean initialized;
+		/** Whether the AAD is complete and the ciphertext has started. */
+		private boolean textStarted;
+
+		Incremental(AES aes, GHASH ghash) {
+			this.aes = aes;
+			this.ghash = ghash;
+		}
+
+		/** @return IV_LENGTH, although init accepts IVs of any length */
+		@Override
+		public int getIVLength() {
+			return IV_LENGTH;
+		}
+
+		/**
+		 * Starts a new message, discarding any unfinished one.
+		 * @param encrypt true to encrypt, false to decrypt
+		 * @param iv initialization vector of any non-zero length, which must never be reused with the same key
+		 */
+		@Override
+		public void init(boolean encrypt, byte[] iv) {
+			assert iv.length > 0;
+			if (iv.length == IV_LENGTH) {
+				// J0 = IV || 0^31 || 1
+				System.arraycopy(iv, 0, preCounter, 0, IV_LENGTH);
+				Bytes.BIG_ENDIAN_INTS.set(preCounter, IV_LENGTH, 1);
+			} else {
+				// J0 = GHASH(IV || 0^(s+64) || [len(IV)]_64)
+				ghash.reset();
+				ghash.update(iv, 0, iv.length);
+				ghash.pad();
+				ghash.updateBlock(0, (long) iv.length * Byte.SIZE);
+				ghash.digest(preCounter, 0);
+			}
+			ghash.reset();
+			counterHi = AES_CTR.counterHi(preCounter);
+			counterLo = AES_CTR.counterLo(preCounter);
+			advance(1);
+			keystreamUsed = AES.BLOCK_SIZE;
+			heldLength = 0;
+			aadLength = 0;
+			textLength = 0;
+			this.encrypt = encrypt;
+			textStarted = false;
+			initialized = true;
+		}
+
+		/**
+		 * Authenticates length bytes of additional data, which must all come before the first update.
+		 */
+		public void updateAAD(byte[] aad, int off, int length) {
+			assert initialized && !textStarted;
+			ghash.update(aad, off, length);
+			aadLength += length;
+		}
+
+		@Override
+		public int getOutputSize(int length) {
+			return encrypt ? length + TAG_LENGTH : Math.max(0, heldLength + length - TAG_LENGTH);
+		}
+
+		@Override
+		public int update(byte[] in, int inOff, int length, byte[] out, int outOff) {
+			assert initialized;
+			if (encrypt) {
+				crypt(in, inOff, out, outOff, length);
+				return length;
+			}
+
+			// Process everything but the last TAG_LENGTH bytes seen, starting with those held back before.
+			int release = heldLength + length - TAG_LENGTH;
+			int consumed = 0;
+			if (release > 0) {
+				int fromHeld = Math.min(heldLength, release);
+				crypt(held, 0, out, outOff, fromHeld);
+				System.arraycopy(held, fromHeld, held, 0, heldLength - fromHeld);
+				heldLength -= fromHeld;
+				consumed = release - fromHeld;
+				crypt(in, inOff, out, outOff + fromHeld, consumed);
+			}
+			System.arraycopy(in, inOff + consumed, held, heldLength, length - consumed);
+			heldLength += length - consumed;
+			return Math.max(0, release);
+		}
+
+		/**
+		 * Finishes the message. Encryption writes the tag to out[outOff..].
+		 * @throws SecurityException if decryption finds the tag does not match
+		 */
+		@Override
+		public int doFinal(byte[] out, int outOff) {
+			assert initialized;
+			initialized = false;
+			startText();
+			ghash.pad();
+			ghash.updateBlock(aadLength * Byte.SIZE, textLength * Byte.SIZE);
+
+			// T = GCTR(J0, S)
+			ghash.digest(keystream, 0);
+			aes.encryptBlock(preCounter, 0, tagMask, 0);
+			Bytes.xorInto(keystream, 0, tagMask, 0, keystream, 0, TAG_LENGTH);
+			if (encrypt) {
+				System.arraycopy(keystream, 0, out, outOff, TAG_LENGTH);
+				return TAG_LENGTH;
+			}
+			if (heldLength != TAG_LENGTH || !MessageDigest.isEqual(keystream, held)) {
+				throw new SecurityException("GCM tag mismatch");
+			}
+			return 0;
+		}
+
+		/** Pads the AAD before the first ciphertext block is hashed. */
+		private void startText() {
+			if (!textStarted) {
+				ghash.pad();
+				textStarted = true;
+			}
+		}
+
+		/**
+		 * Encrypts or decrypts length bytes of in[inOff..] into out[outOff..], hashing the ciphertext.
+		 * Ciphertext is hashed before decryption and after encryption, so in and out may be the same region.
+		 */
+		private void crypt(byte[] in, int inOff, byte[] out, int outOff, int length) {
+			startText();
+			textLength += length;
+			assert textLength <= MAXIMUM_TEXT_BYTES;
+			int done = 0;
+
+			// Use up the keystream left over from the last update.
+			int leftover = Math.min(AES.BLOCK_SIZE - keystreamUsed, length);
+			xorAndHash(in, inOff, keystream, keystreamUsed, out, outOff, leftover);
+			keystreamUsed += leftover;
+			done += leftover;
+
+			// Process full blocks a chunk at a time, hashing each chunk while it is in cache.
+			int end = done + (length - done) / AES.BLOCK_SIZE * AES.BLOCK_SIZE;
+			while (done < end) {
+				int chunk = Math.min(CHUNK_SIZE, end - done);
+				if (!encrypt) {
+					ghash.update(in, inOff + done, chunk);
+				}
+				xorKeystream(in, inOff + done, out, outOff + done, chunk);
+				if (encrypt) {
+					ghash.update(out, outOff + done, chunk);
+				}
+				done += chunk;
+			}
+
+			// Start a new keystream block for the tail.
+			if (done < length) {
+				xorKeystream(ZERO_BLOCK, 0, keystream, 0, AES.BLOCK_SIZE);
+				keystreamUsed = length - done;
+				xorAndHash(in, inOff + done, keystream, 0, out, outOff + done, keystreamUsed);
+			}
+		}
+
+		private void xorAndHash(byte[] in, int inOff, byte[] keystream, int keystreamOff, byte[] out, int outOff, int length) {
+			if (!encrypt) {
+				ghash.update(in, inOff, length);
+			}
+			Bytes.xorInto(in, inOff, keystream, keystreamOff, out, outOff, length);
+			if (encrypt) {
+				ghash.update(out, outOff, length);
+			}
+		}
+
+		/**
+		 * XORs the keystream of the next counter blocks into out, for a multiple of the block size.
+		 * The table engine's CTR keystream carries across all 128 bits, so it is run in pieces that stop where the low 32 bits wrap.
+		 */
+		private void xorKeystream(byte[] in, int inOff, byte[] out, int outOff, int length) {
+			assert length % AES.BLOCK_SIZE == 0;
+			int done = 0;
+			while (done < length) {
+				long blocksBeforeWrap = (1L << 32) - (counterLo & WORD_MASK);
+				int n = (int) Math.min(length - done, blocksBeforeWrap * AES.BLOCK_SIZE);
+				aes.xorKeystream(counterHi, counterLo, in, inOff + done, out, outOff + done, n);
+				advance(n / AES.BLOCK_SIZE);
+				done += n;
+			}
+		}
+
+		/** inc_32 applied blocks times. */
+		private void advance(int blocks) {
+			counterLo = (counterLo & ~WORD_MASK) | ((counterLo + blocks) & WORD_MASK);
+		}
+	}
+}
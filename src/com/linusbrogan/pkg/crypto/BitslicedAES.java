@@ -0,0 +1,479 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Constant-time bitsliced AES engine, after the 64-bit "ct64" implementation in BearSSL by Thomas Pornin.
+ * Four blocks are held as eight 64-bit words, word i holding bit i of every State byte, so SubBytes is a Boolean circuit (Boyar and Peralta's) and the other steps are shifts and masks.
+ * Nothing indexes memory or branches on key or data bits.
+ * Fewer than four blocks are processed by filling the rest of the State with zeroes, so one block costs as much as four.
+ */
+final class BitslicedAES {
+	/** Blocks in one bitsliced State. */
+	static final int LANES = 4;
+	private static final int STRIDE = LANES * AES.BLOCK_SIZE;
+	/** Words per round key, which equals Nb. */
+	private static final int ROUND_KEY_WORDS = 4;
+	/** Words of a bitsliced State or round key. */
+	private static final int WORDS = 8;
+	/** Blocks are loaded as little-endian words, so that byte j of a row is bit 8j of its word. */
+	private static final VarHandle LITTLE_ENDIAN_INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	/** Round constants (Sec. 5.2) in the low byte of little-endian words, indexed from 0. */
+	private static final int[] RCON = {0x01, 0x02, 0x04, 0x08, 0x10, 0x20, 0x40, 0x80, 0x1b, 0x36};
+
+	private BitslicedAES() {}
+
+	/**
+	 * KeyExpansion (Sec. 5.2), with SubWord computed by the bitsliced S-box, then each round key bitsliced and repeated for all four blocks.
+	 * @return WORDS words for each of the Nr + 1 round keys
+	 */
+	static long[] expandKey(byte[] key, int Nk, int Nr) {
+		return expandKey(key, Nk, Nr, new long[WORDS * (Nr + 1)]);
+	}
+
+	/**
+	 * Key expansion into an existing bitsliced schedule, overwriting all of it.
+	 * Allocates its working arrays on each call and zeroizes them before returning.
+	 * @param schedule WORDS * (Nr + 1) words
+	 * @return schedule
+	 */
+	static long[] expandKey(byte[] key, int Nk, int Nr, long[] schedule) {
+		assert schedule.length == WORDS * (Nr + 1);
+		int words = ROUND_KEY_WORDS * (Nr + 1);
+		int[] w = new int[words];
+		for (int i = 0; i < Nk; i++) {
+			w[i] = (int) LITTLE_ENDIAN_INTS.get(key, i * Integer.BYTES);
+		}
+		long[] q = new long[WORDS];
+		for (int i = Nk; i < words; i++) {
+			int temp = w[i - 1];
+			if (i % Nk == 0) {
+				// RotWord, which is a right rotation of a little-endian word.
+				temp = subWord(Integer.rotateRight(temp, 8), q) ^ RCON[i / Nk - 1];
+			} else if (Nk > 6 && i % Nk == 4) {
+				temp = subWord(temp, q);
+			}
+			w[i] = w[i - Nk] ^ temp;
+		}
+		for (int round = 0; round <= Nr; round++) {
+			int i = round * ROUND_KEY_WORDS;
+			q[0] = interleaveLow(w[i], w[i + 2]);
+			q[4] = interleaveLow(w[i + 1], w[i + 3]);
+			q[1] = q[2] = q[3] = q[0];
+			q[5] = q[6] = q[7] = q[4];
+			ortho(q);
+			System.arraycopy(q, 0, schedule, round * WORDS, WORDS);
+		}
+		// Both hold round keys, which must not outlive the schedule that AES.zeroize clears.
+		Arrays.fill(w, 0);
+		Arrays.fill(q, 0);
+		return schedule;
+	}
+
+	/** SubWord (Sec. 5.2) through the bitsliced S-box. */
+	private static int subWord(int x, long[] q) {
+		q[0] = x & 0xffffffffL;
+		for (int i = 1; i < WORDS; i++) {
+			q[i] = 0;
+		}
+		ortho(q);
+		sBox(q);
+		ortho(q);
+		return (int) q[0];
+	}
+
+	/**
+	 * Encrypts up to four consecutive blocks.
+	 * in and out may be the same region.
+	 */
+	static void encryptBlocks(long[] sk, int Nr, byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		long[] q = new long[WORDS];
+		load(q, in, inOff, blocks);
+		encrypt(sk, Nr, q);
+		store(q, out, outOff, blocks);
+	}
+
+	/**
+	 * Decrypts up to four consecutive blocks.
+	 * in and out may be the same region.
+	 */
+	static void decryptBlocks(long[] sk, int Nr, byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		long[] q = new long[WORDS];
+		load(q, in, inOff, blocks);
+		decrypt(sk, Nr, q);
+		store(q, out, outOff, blocks);
+	}
+
+	/**
+	 * XORs the CTR mode keystream into out, encrypting four counter blocks per State.
+	 * @param hi first 8 bytes of the initial counter block, big-endian
+	 * @param lo last 8 bytes of the initial counter block, big-endian
+	 */
+	static void ctr(long[] sk, int Nr, long hi, long lo, byte[] in, int inOff, byte[] out, int outOff, int length) {
+		long[] q = new long[WORDS];
+		byte[] keystream = new byte[STRIDE];
+		for (int done = 0; done < length; done += STRIDE) {
+			for (int i = 0; i < LANES; i++) {
+				long counterLo = lo + i;
+				Bytes.BIG_ENDIAN_LONGS.set(keystream, i * AES.BLOCK_SIZE, AES_CTR.addCarry(hi, lo, counterLo));
+				Bytes.BIG_ENDIAN_LONGS.set(keystream, i * AES.BLOCK_SIZE + Long.BYTES, counterLo);
+			}
+			load(q, keystream, 0, LANES);
+			encrypt(sk, Nr, q);
+			store(q, keystream, 0, LANES);
+			Bytes.xorInto(in, inOff + done, keystream, 0, out, outOff + done, Math.min(STRIDE, length - done));
+			long next = lo + LANES;
+			hi = AES_CTR.addCarry(hi, lo, next);
+			lo = next;
+		}
+	}
+
+	/**
+	 * Decrypts consecutive CBC mode blocks four at a time.
+	 * @param in buffer holding the IV or previous ciphertext block at inOff - BLOCK_SIZE, followed by the blocks to decrypt
+	 * @param out buffer receiving the message blocks, which must not overlap in
+	 */
+	static void cbcDecrypt(long[] sk, int Nr, byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		long[] q = new long[WORDS];
+		for (int done = 0; done < blocks; done += LANES) {
+			int count = Math.min(LANES, blocks - done);
+			int block = inOff + done * AES.BLOCK_SIZE;
+			int outBlock = outOff + done * AES.BLOCK_SIZE;
+			load(q, in, block, count);
+			decrypt(sk, Nr, q);
+			store(q, out, outBlock, count);
+			Bytes.xorInto(out, outBlock, in, block - AES.BLOCK_SIZE, out, outBlock, count * AES.BLOCK_SIZE);
+		}
+	}
+
+	/** Cipher (Sec. 5.1) on a bitsliced State. */
+	private static void encrypt(long[] sk, int Nr, long[] q) {
+		addRoundKey(q, sk, 0);
+		for (int round = 1; round < Nr; round++) {
+			sBox(q);
+			shiftRows(q);
+			mixColumns(q);
+			addRoundKey(q, sk, round);
+		}
+		sBox(q);
+		shiftRows(q);
+		addRoundKey(q, sk, Nr);
+	}
+
+	/** Inverse Cipher (Sec. 5.3) on a bitsliced State. */
+	private static void decrypt(long[] sk, int Nr, long[] q) {
+		addRoundKey(q, sk, Nr);
+		for (int round = Nr - 1; round > 0; round--) {
+			invShiftRows(q);
+			invSBox(q);
+			addRoundKey(q, sk, round);
+			invMixColumns(q);
+		}
+		invShiftRows(q);
+		invSBox(q);
+		addRoundKey(q, sk, 0);
+	}
+
+	/** Bitslices blocks from in, filling missing blocks with zeroes. */
+	private static void load(long[] q, byte[] in, int inOff, int blocks) {
+		for (int i = 0; i < LANES; i++) {
+			if (i < blocks) {
+				int offset = inOff + i * AES.BLOCK_SIZE;
+				int w0 = (int) LITTLE_ENDIAN_INTS.get(in, offset);
+				int w1 = (int) LITTLE_ENDIAN_INTS.get(in, offset + 4);
+				int w2 = (int) LITTLE_ENDIAN_INTS.get(in, offset + 8);
+				int w3 = (int) LITTLE_ENDIAN_INTS.get(in, offset + 12);
+				q[i] = interleaveLow(w0, w2);
+				q[i + 4] = interleaveLow(w1, w3);
+			} else {
+				q[i] = 0;
+				q[i + 4] = 0;
+			}
+		}
+		ortho(q);
+	}
+
+	/** Writes blocks from a bitsliced State to out. */
+	private static void store(long[] q, byte[] out, int outOff, int blocks) {
+		ortho(q);
+		for (int i = 0; i < blocks; i++) {
+			int offset = outOff + i * AES.BLOCK_SIZE;
+			LITTLE_ENDIAN_INTS.set(out, offset, evenBytes(q[i]));
+			LITTLE_ENDIAN_INTS.set(out, offset + 4, evenBytes(q[i + 4]));
+			LITTLE_ENDIAN_INTS.set(out, offset + 8, evenBytes(q[i] >>> 8));
+			LITTLE_ENDIAN_INTS.set(out, offset + 12, evenBytes(q[i + 4] >>> 8));
+		}
+	}
+
+	/** @return the bytes of a in the even byte positions and those of b in the odd ones */
+	private static long interleaveLow(int a, int b) {
+		return spreadBytes(a) | spreadBytes(b) << 8;
+	}
+
+	/** @return the four bytes of x in the even byte positions of a long */
+	private static long spreadBytes(int x) {
+		long y = x & 0xffffffffL;
+		y = (y | y << 16) & 0x0000ffff0000ffffL;
+		return (y | y << 8) & 0x00ff00ff00ff00ffL;
+	}
+
+	/** @return the even bytes of x, packed into an int */
+	private static int evenBytes(long x) {
+		x &= 0x00ff00ff00ff00ffL;
+		x = (x | x >>> 8) & 0x0000ffff0000ffffL;
+		return (int) (x | x >>> 16);
+	}
+
+	/** Transposes the bits of the State between byte order and bitsliced order; it is its own inverse. */
+	private static void ortho(long[] q) {
+		swap(q, 0, 1, 0x5555555555555555L, 1);
+		swap(q, 2, 3, 0x5555555555555555L, 1);
+		swap(q, 4, 5, 0x5555555555555555L, 1);
+		swap(q, 6, 7, 0x5555555555555555L, 1);
+
+		swap(q, 0, 2, 0x3333333333333333L, 2);
+		swap(q, 1, 3, 0x3333333333333333L, 2);
+		swap(q, 4, 6, 0x3333333333333333L, 2);
+		swap(q, 5, 7, 0x3333333333333333L, 2);
+
+		swap(q, 0, 4, 0x0f0f0f0f0f0f0f0fL, 4);
+		swap(q, 1, 5, 0x0f0f0f0f0f0f0f0fL, 4);
+		swap(q, 2, 6, 0x0f0f0f0f0f0f0f0fL, 4);
+		swap(q, 3, 7, 0x0f0f0f0f0f0f0f0fL, 4);
+	}
+
+	/** Exchanges the high bits of each group in q[x] with the low bits of each group in q[y]. */
+	private static void swap(long[] q, int x, int y, long low, int shift) {
+		long a = q[x];
+		long b = q[y];
+		q[x] = (a & low) | (b & low) << shift;
+		q[y] = (a & ~low) >>> shift | (b & ~low);
+	}
+
+	private static void addRoundKey(long[] q, long[] sk, int round) {
+		int offset = round * WORDS;
+		for (int i = 0; i < WORDS; i++) {
+			q[i] ^= sk[offset + i];
+		}
+	}
+
+	/** SubBytes (Sec. 5.1.1) as the 113 gate circuit of Boyar and Peralta. */
+	private static void sBox(long[] q) {
+		long x0 = q[7], x1 = q[6], x2 = q[5], x3 = q[4], x4 = q[3], x5 = q[2], x6 = q[1], x7 = q[0];
+
+		// Top linear transformation.
+		long y14 = x3 ^ x5;
+		long y13 = x0 ^ x6;
+		long y9 = x0 ^ x3;
+		long y8 = x0 ^ x5;
+		long t0 = x1 ^ x2;
+		long y1 = t0 ^ x7;
+		long y4 = y1 ^ x3;
+		long y12 = y13 ^ y14;
+		long y2 = y1 ^ x0;
+		long y5 = y1 ^ x6;
+		long y3 = y5 ^ y8;
+		long t1 = x4 ^ y12;
+		long y15 = t1 ^ x5;
+		long y20 = t1 ^ x1;
+		long y6 = y15 ^ x7;
+		long y10 = y15 ^ t0;
+		long y11 = y20 ^ y9;
+		long y7 = x7 ^ y11;
+		long y17 = y10 ^ y11;
+		long y19 = y10 ^ y8;
+		long y16 = t0 ^ y11;
+		long y21 = y13 ^ y16;
+		long y18 = x0 ^ y16;
+
+		// Non-linear section.
+		long t2 = y12 & y15;
+		long t3 = y3 & y6;
+		long t4 = t3 ^ t2;
+		long t5 = y4 & x7;
+		long t6 = t5 ^ t2;
+		long t7 = y13 & y16;
+		long t8 = y5 & y1;
+		long t9 = t8 ^ t7;
+		long t10 = y2 & y7;
+		long t11 = t10 ^ t7;
+		long t12 = y9 & y11;
+		long t13 = y14 & y17;
+		long t14 = t13 ^ t12;
+		long t15 = y8 & y10;
+		long t16 = t15 ^ t12;
+		long t17 = t4 ^ t14;
+		long t18 = t6 ^ t16;
+		long t19 = t9 ^ t14;
+		long t20 = t11 ^ t16;
+		long t21 = t17 ^ y20;
+		long t22 = t18 ^ y19;
+		long t23 = t19 ^ y21;
+		long t24 = t20 ^ y18;
+
+		long t25 = t21 ^ t22;
+		long t26 = t21 & t23;
+		long t27 = t24 ^ t26;
+		long t28 = t25 & t27;
+		long t29 = t28 ^ t22;
+		long t30 = t23 ^ t24;
+		long t31 = t22 ^ t26;
+		long t32 = t31 & t30;
+		long t33 = t32 ^ t24;
+		long t34 = t23 ^ t33;
+		long t35 = t27 ^ t33;
+		long t36 = t24 & t35;
+		long t37 = t36 ^ t34;
+		long t38 = t27 ^ t36;
+		long t39 = t29 & t38;
+		long t40 = t25 ^ t39;
+
+		long t41 = t40 ^ t37;
+		long t42 = t29 ^ t33;
+		long t43 = t29 ^ t40;
+		long t44 = t33 ^ t37;
+		long t45 = t42 ^ t41;
+		long z0 = t44 & y15;
+		long z1 = t37 & y6;
+		long z2 = t33 & x7;
+		long z3 = t43 & y16;
+		long z4 = t40 & y1;
+		long z5 = t29 & y7;
+		long z6 = t42 & y11;
+		long z7 = t45 & y17;
+		long z8 = t41 & y10;
+		long z9 = t44 & y12;
+		long z10 = t37 & y3;
+		long z11 = t33 & y4;
+		long z12 = t43 & y13;
+		long z13 = t40 & y5;
+		long z14 = t29 & y2;
+		long z15 = t42 & y9;
+		long z16 = t45 & y14;
+		long z17 = t41 & y8;
+
+		// Bottom linear transformation.
+		long t46 = z15 ^ z16;
+		long t47 = z10 ^ z11;
+		long t48 = z5 ^ z13;
+		long t49 = z9 ^ z10;
+		long t50 = z2 ^ z12;
+		long t51 = z2 ^ z5;
+		long t52 = z7 ^ z8;
+		long t53 = z0 ^ z3;
+		long t54 = z6 ^ z7;
+		long t55 = z16 ^ z17;
+		long t56 = z12 ^ t48;
+		long t57 = t50 ^ t53;
+		long t58 = z4 ^ t46;
+		long t59 = z3 ^ t54;
+		long t60 = t46 ^ t57;
+		long t61 = z14 ^ t57;
+		long t62 = t52 ^ t58;
+		long t63 = t49 ^ t58;
+		long t64 = z4 ^ t59;
+		long t65 = t61 ^ t62;
+		long t66 = z1 ^ t63;
+		long s0 = t59 ^ t63;
+		long s6 = t56 ^ ~t62;
+		long s7 = t48 ^ ~t60;
+		long t67 = t64 ^ t65;
+		long s3 = t53 ^ t66;
+		long s4 = t51 ^ t66;
+		long s5 = t47 ^ t65;
+		long s1 = t64 ^ ~s3;
+		long s2 = t55 ^ ~t67;
+
+		q[7] = s0;
+		q[6] = s1;
+		q[5] = s2;
+		q[4] = s3;
+		q[3] = s4;
+		q[2] = s5;
+		q[1] = s6;
+		q[0] = s7;
+	}
+
+	/** InvSubBytes (Sec. 5.3.2) as the inverse affine transformation around the forward S-box, which undoes its affine part. */
+	private static void invSBox(long[] q) {
+		invAffine(q);
+		sBox(q);
+		invAffine(q);
+	}
+
+	/** The inverse of the affine transformation of Sec. 5.1.1, including its constant {63}. */
+	private static void invAffine(long[] q) {
+		long q0 = ~q[0], q1 = ~q[1], q2 = q[2], q3 = q[3], q4 = q[4], q5 = ~q[5], q6 = ~q[6], q7 = q[7];
+		q[7] = q1 ^ q4 ^ q6;
+		q[6] = q0 ^ q3 ^ q5;
+		q[5] = q7 ^ q2 ^ q4;
+		q[4] = q6 ^ q1 ^ q3;
+		q[3] = q5 ^ q0 ^ q2;
+		q[2] = q4 ^ q7 ^ q1;
+		q[1] = q3 ^ q6 ^ q0;
+		q[0] = q2 ^ q5 ^ q7;
+	}
+
+	/** ShiftRows (Sec. 5.1.2): each 16-bit row of a word rotates by its row number of 4-bit columns. */
+	private static void shiftRows(long[] q) {
+		for (int i = 0; i < WORDS; i++) {
+			long x = q[i];
+			q[i] = (x & 0x000000000000ffffL)
+				| (x & 0x00000000fff00000L) >>> 4
+				| (x & 0x00000000000f0000L) << 12
+				| (x & 0x0000ff0000000000L) >>> 8
+				| (x & 0x000000ff00000000L) << 8
+				| (x & 0xf000000000000000L) >>> 12
+				| (x & 0x0fff000000000000L) << 4;
+		}
+	}
+
+	/** InvShiftRows (Sec. 5.3.1). */
+	private static void invShiftRows(long[] q) {
+		for (int i = 0; i < WORDS; i++) {
+			long x = q[i];
+			q[i] = (x & 0x000000000000ffffL)
+				| (x & 0x000000000fff0000L) << 4
+				| (x & 0x00000000f0000000L) >>> 12
+				| (x & 0x000000ff00000000L) << 8
+				| (x & 0x0000ff0000000000L) >>> 8
+				| (x & 0x000f000000000000L) << 12
+				| (x & 0xfff0000000000000L) >>> 4;
+		}
+	}
+
+	/** MixColumns (Sec. 5.1.3), where rotating a word by one row multiplies by x over the rows of a column. */
+	private static void mixColumns(long[] q) {
+		long q0 = q[0], q1 = q[1], q2 = q[2], q3 = q[3], q4 = q[4], q5 = q[5], q6 = q[6], q7 = q[7];
+		long r0 = Long.rotateRight(q0, 16), r1 = Long.rotateRight(q1, 16), r2 = Long.rotateRight(q2, 16), r3 = Long.rotateRight(q3, 16);
+		long r4 = Long.rotateRight(q4, 16), r5 = Long.rotateRight(q5, 16), r6 = Long.rotateRight(q6, 16), r7 = Long.rotateRight(q7, 16);
+
+		q[0] = q7 ^ r7 ^ r0 ^ Long.rotateRight(q0 ^ r0, 32);
+		q[1] = q0 ^ r0 ^ q7 ^ r7 ^ r1 ^ Long.rotateRight(q1 ^ r1, 32);
+		q[2] = q1 ^ r1 ^ r2 ^ Long.rotateRight(q2 ^ r2, 32);
+		q[3] = q2 ^ r2 ^ q7 ^ r7 ^ r3 ^ Long.rotateRight(q3 ^ r3, 32);
+		q[4] = q3 ^ r3 ^ q7 ^ r7 ^ r4 ^ Long.rotateRight(q4 ^ r4, 32);
+		q[5] = q4 ^ r4 ^ r5 ^ Long.rotateRight(q5 ^ r5, 32);
+		q[6] = q5 ^ r5 ^ r6 ^ Long.rotateRight(q6 ^ r6, 32);
+		q[7] = q6 ^ r6 ^ r7 ^ Long.rotateRight(q7 ^ r7, 32);
+	}
+
+	/** InvMixColumns (Sec. 5.3.3). */
+	private static void invMixColumns(long[] q) {
+		long q0 = q[0], q1 = q[1], q2 = q[2], q3 = q[3], q4 = q[4], q5 = q[5], q6 = q[6], q7 = q[7];
+		long r0 = Long.rotateRight(q0, 16), r1 = Long.rotateRight(q1, 16), r2 = Long.rotateRight(q2, 16), r3 = Long.rotateRight(q3, 16);
+		long r4 = Long.rotateRight(q4, 16), r5 = Long.rotateRight(q5, 16), r6 = Long.rotateRight(q6, 16), r7 = Long.rotateRight(q7, 16);
+
+		q[0] = q5 ^ q6 ^ q7 ^ r0 ^ r5 ^ r7 ^ Long.rotateRight(q0 ^ q5 ^ q6 ^ r0 ^ r5, 32);
+		q[1] = q0 ^ q5 ^ r0 ^ r1 ^ r5 ^ r6 ^ r7 ^ Long.rotateRight(q1 ^ q5 ^ q7 ^ r1 ^ r5 ^ r6, 32);
+		q[2] = q0 ^ q1 ^ q6 ^ r1 ^ r2 ^ r6 ^ r7 ^ Long.rotateRight(q0 ^ q2 ^ q6 ^ r2 ^ r6 ^ r7, 32);
+		q[3] = q0 ^ q1 ^ q2 ^ q5 ^ q6 ^ r0 ^ r2 ^ r3 ^ r5 ^ Long.rotateRight(q0 ^ q1 ^ q3 ^ q5 ^ q6 ^ q7 ^ r0 ^ r3 ^ r5 ^ r7, 32);
+		q[4] = q1 ^ q2 ^ q3 ^ q5 ^ r1 ^ r3 ^ r4 ^ r5 ^ r6 ^ r7 ^ Long.rotateRight(q1 ^ q2 ^ q4 ^ q5 ^ q7 ^ r1 ^ r4 ^ r5 ^ r6, 32);
+		q[5] = q2 ^ q3 ^ q4 ^ q6 ^ r2 ^ r4 ^ r5 ^ r6 ^ r7 ^ Long.rotateRight(q2 ^ q3 ^ q5 ^ q6 ^ r2 ^ r5 ^ r6 ^ r7, 32);
+		q[6] = q3 ^ q4 ^ q5 ^ q7 ^ r3 ^ r5 ^ r6 ^ r7 ^ Long.rotateRight(q3 ^ q4 ^ q6 ^ q7 ^ r3 ^ r6 ^ r7, 32);
+		q[7] = q4 ^ q5 ^ q6 ^ r4 ^ r6 ^ r7 ^ Long.rotateRight(q4 ^ q5 ^ q7 ^ r4 ^ r7, 32);
+	}
+}
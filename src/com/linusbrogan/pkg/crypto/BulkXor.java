@@ -0,0 +1,21 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.nio.ByteBuffer;
+
+/**
+ * XOR over the whole SIMD vectors in a range, leaving the tail to the caller.
+ * Implemented by VectorBytes, which is built separately against the incubating Vector API and loaded by Bytes only when that module is present.
+ */
+interface BulkXor {
+	/**
+	 * Writes a[aOff..] XOR b[bOff..] into dst[dstOff..] for the whole vectors in length.
+	 * @return the number of bytes written, leaving a tail shorter than a vector for the caller
+	 */
+	int xorInto(byte[] a, int aOff, byte[] b, int bOff, byte[] dst, int dstOff, int length);
+
+	/**
+	 * Writes a[aPos..] XOR b[bPos..] into dst[dstPos..] for the whole vectors in length, using absolute indices.
+	 * @return the number of bytes written, leaving a tail shorter than a vector for the caller
+	 */
+	int xorInto(ByteBuffer a, int aPos, ByteBuffer b, int bPos, ByteBuffer dst, int dstPos, int length);
+}
@@ -1,7 +1,39 @@
 package com.linusbrogan.pkg.crypto;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 public class Bytes {
 	private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+	/** Reads and writes big-endian longs at any offset of a byte array. */
+	static final VarHandle BIG_ENDIAN_LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	/** Reads and writes big-endian ints at any offset of a byte array. */
+	static final VarHandle BIG_ENDIAN_INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	/** Bulk XOR through SIMD lanes, or null when the Vector API is not available. */
+	private static final BulkXor VECTOR_XOR = loadVectorXor();
+	/**
+	 * Whether bulk XORs use SIMD lanes through VectorBytes.
+	 * True when VectorBytes was built and the JVM was started with --add-modules jdk.incubator.vector, unless the com.linusbrogan.pkg.crypto.vector system property is false.
+	 */
+	static final boolean VECTORIZED = VECTOR_XOR != null;
+	/** Shorter XORs are left to the long loop, which needs no vector setup. */
+	private static final int VECTOR_THRESHOLD = 64;
+
+	private static BulkXor loadVectorXor() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()
+			|| !Boolean.parseBoolean(System.getProperty("com.linusbrogan.pkg.crypto.vector", "true"))) {
+			return null;
+		}
+		try {
+			return (BulkXor) Class.forName("com.linusbrogan.pkg.crypto.VectorBytes").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// The classes were built without the vector source set.
+			return null;
+		}
+	}
 
 	/**
 	 * @return the bytes of l in big-endian order
@@ -66,12 +98,96 @@ public class Bytes {
 	public static byte[] xor(byte[] a, byte[] b) {
 		assert a.length == b.length;
 		byte[] xor = new byte[a.length];
-		for (int i = 0; i < xor.length; i++) {
-			xor[i] = (byte) (a[i] ^ b[i]);
-		}
+		xorInto(a, 0, b, 0, xor, 0, xor.length);
 		return xor;
 	}
 
+	/**
+	 * Writes a[aOff..] XOR b[bOff..] into dst[dstOff..] without allocating.
+	 * Whole words are combined 8 bytes at a time through long views of the arrays, or a vector at a time when VECTORIZED, then any tail byte by byte.
+	 * There are no data-dependent branches or indices, so the time taken depends only on length.
+	 * dst may overlap a or b at the same offset.
+	 * @param length number of bytes to combine
+	 */
+	public static void xorInto(byte[] a, int aOff, byte[] b, int bOff, byte[] dst, int dstOff, int length) {
+		assert aOff >= 0 && aOff + length <= a.length;
+		assert bOff >= 0 && bOff + length <= b.length;
+		assert dstOff >= 0 && dstOff + length <= dst.length;
+		int i = 0;
+		if (VECTORIZED && length >= VECTOR_THRESHOLD) {
+			i = VECTOR_XOR.xorInto(a, aOff, b, bOff, dst, dstOff, length);
+		}
+		for (; i <= length - Long.BYTES; i += Long.BYTES) {
+			long x = (long) BIG_ENDIAN_LONGS.get(a, aOff + i) ^ (long) BIG_ENDIAN_LONGS.get(b, bOff + i);
+			BIG_ENDIAN_LONGS.set(dst, dstOff + i, x);
+		}
+		for (; i < length; i++) {
+			dst[dstOff + i] = (byte) (a[aOff + i] ^ b[bOff + i]);
+		}
+	}
+
+	/**
+	 * XORs src[srcOff..] into dst[dstOff..] in place.
+	 * @param length number of bytes to combine
+	 */
+	public static void xorInPlace(byte[] dst, int dstOff, byte[] src, int srcOff, int length) {
+		xorInto(dst, dstOff, src, srcOff, dst, dstOff, length);
+	}
+
+	/**
+	 * XORs a.remaining() bytes of a and b into dst, advancing all three buffers.
+	 * Heap and direct buffers are read and written in place, 8 bytes at a time.
+	 */
+	public static void xor(ByteBuffer a, ByteBuffer b, ByteBuffer dst) {
+		int length = a.remaining();
+		assert b.remaining() == length;
+		if (dst.remaining() < length) throw new BufferOverflowException();
+		xorInto(a, a.position(), b, b.position(), dst, dst.position(), length);
+		a.position(a.position() + length);
+		b.position(b.position() + length);
+		dst.position(dst.position() + length);
+	}
+
+	/** Writes a[aPos..] XOR b[bPos..] into dst[dstPos..] using absolute indices, leaving the buffer positions alone. */
+	static void xorInto(ByteBuffer a, int aPos, ByteBuffer b, int bPos, ByteBuffer dst, int dstPos, int length) {
+		if (a.hasArray() && b.hasArray() && dst.hasArray()) {
+			xorInto(a.array(), a.arrayOffset() + aPos, b.array(), b.arrayOffset() + bPos, dst.array(), dst.arrayOffset() + dstPos, length);
+			return;
+		}
+		int i = 0;
+		if (VECTORIZED && length >= VECTOR_THRESHOLD) {
+			i = VECTOR_XOR.xorInto(a, aPos, b, bPos, dst, dstPos, length);
+		}
+		for (; i + Long.BYTES <= length; i += Long.BYTES) {
+			putLong(dst, dstPos + i, getLong(a, aPos + i) ^ getLong(b, bPos + i));
+		}
+		for (; i < length; i++) {
+			dst.put(dstPos + i, (byte) (a.get(aPos + i) ^ b.get(bPos + i)));
+		}
+	}
+
+	/** @return the big-endian int at index, whatever the order of buffer */
+	static int getInt(ByteBuffer buffer, int index) {
+		int i = buffer.getInt(index);
+		return buffer.order() == ByteOrder.BIG_ENDIAN ? i : Integer.reverseBytes(i);
+	}
+
+	/** Writes i big-endian at index, whatever the order of buffer. */
+	static void putInt(ByteBuffer buffer, int index, int i) {
+		buffer.putInt(index, buffer.order() == ByteOrder.BIG_ENDIAN ? i : Integer.reverseBytes(i));
+	}
+
+	/** @return the big-endian long at index, whatever the order of buffer */
+	static long getLong(ByteBuffer buffer, int index) {
+		long l = buffer.getLong(index);
+		return buffer.order() == ByteOrder.BIG_ENDIAN ? l : Long.reverseBytes(l);
+	}
+
+	/** Writes l big-endian at index, whatever the order of buffer. */
+	static void putLong(ByteBuffer buffer, int index, long l) {
+		buffer.putLong(index, buffer.order() == ByteOrder.BIG_ENDIAN ? l : Long.reverseBytes(l));
+	}
+
 	public static byte[][] transpose(byte[][] matrix) {
 		byte[][] transpose = new byte[matrix[0].length][matrix.length];
 		for (int r = 0; r < matrix.length; r++) {
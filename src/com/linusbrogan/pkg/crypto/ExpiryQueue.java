@@ -0,0 +1,82 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Queues cache keys by the time step they expire with, so that expired keys can be evicted a few at a time instead of by scanning the whole cache.
+ * Safe for concurrent use.
+ * @param <K> key
+ */
+final class ExpiryQueue<K> {
+	/** Queued keys examined by each incremental sweep. A cache call queues at most one key, so examining two per call keeps eviction ahead of additions. */
+	static final int SWEEP_ENTRIES = 2;
+
+	/** Removes a key from its cache. */
+	@FunctionalInterface
+	interface Evictor<K> {
+		/** @return true if key was removed, false if it had been replaced by a later step */
+		boolean evict(K key, long step);
+	}
+
+	/** Keys by step. A key may be queued under a step it no longer has, which the evictor ignores. */
+	private final ConcurrentSkipListMap<Long, Queue<K>> keysByStep = new ConcurrentSkipListMap<>();
+	private final Evictor<K> evictor;
+
+	ExpiryQueue(Evictor<K> evictor) {
+		this.evictor = evictor;
+	}
+
+	void add(K key, long step) {
+		while (true) {
+			Queue<K> queue = keysByStep.computeIfAbsent(step, s -> new ConcurrentLinkedQueue<>());
+			queue.add(key);
+			// A sweep may have removed the queue as empty before the add; if so, queue the key again.
+			if (keysByStep.get(step) == queue) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Evicts up to SWEEP_ENTRIES expired keys, the share of eviction that a cache does on each call.
+	 * @param horizon earliest step that has not expired
+	 * @return the number of keys evicted
+	 */
+	int sweepIncrementally(long horizon) {
+		return sweep(horizon, SWEEP_ENTRIES, SWEEP_ENTRIES);
+	}
+
+	/**
+	 * Evicts keys queued under steps before horizon, oldest first.
+	 * @param horizon earliest step that has not expired
+	 * @param entries maximum number of queued keys to examine
+	 * @param evictions number of evictions to stop after
+	 * @return the number of keys evicted
+	 */
+	int sweep(long horizon, int entries, int evictions) {
+		int count = 0;
+		while (entries > 0 && count < evictions) {
+			Map.Entry<Long, Queue<K>> oldest = keysByStep.firstEntry();
+			if (oldest == null || oldest.getKey() >= horizon) {
+				break;
+			}
+			long step = oldest.getKey();
+			Queue<K> queue = oldest.getValue();
+			K key = queue.poll();
+			if (key == null) {
+				keysByStep.remove(step, queue);
+				// Evict keys added to the queue as it was removed.
+				while ((key = queue.poll()) != null) {
+					count += evictor.evict(key, step) ? 1 : 0;
+				}
+				continue;
+			}
+			entries--;
+			count += evictor.evict(key, step) ? 1 : 0;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,485 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.util.Arrays;
+
+/**
+ * An implementation of HMAC ([RFC 2104](https://datatracker.ietf.org/doc/html/rfc2104)) over the SHA-1, SHA-256, and SHA-512 compression functions of FIPS 180-4.
+ * The hash states after absorbing K XOR ipad and K XOR opad are computed once per key, so the MAC of a message that fits in one block costs two compression function calls.
+ * An instance keeps its own working buffers and is not thread safe; copy shares the keyed midstates with a new set of buffers.
+ */
+abstract class HMAC {
+	private static final byte IPAD = 0x36;
+	private static final byte OPAD = 0x5c;
+	/** The padding bit that follows the message (FIPS 180-4 Sec. 5.1). */
+	private static final byte PADDING = (byte) 0x80;
+
+	/** Input block size in bytes. */
+	private final int blockSize;
+	/** Digest size in bytes, which is also the MAC size. */
+	private final int macLength;
+	/** Size of the message length field at the end of the final block. */
+	private final int lengthFieldBytes;
+	/** The block being compressed. */
+	final byte[] block;
+	/** The inner digest. */
+	private final byte[] inner;
+	/** The key padded to a block, K0 in FIPS 198-1. */
+	private final byte[] K0;
+
+	HMAC(int blockSize, int macLength, int lengthFieldBytes) {
+		this.blockSize = blockSize;
+		this.macLength = macLength;
+		this.lengthFieldBytes = lengthFieldBytes;
+		this.block = new byte[blockSize];
+		this.inner = new byte[macLength];
+		this.K0 = new byte[blockSize];
+	}
+
+	/**
+	 * @param algorithm The HMAC algorithm
+	 * @param K The HMAC key
+	 * @return an HMAC keyed with K
+	 */
+	static HMAC getInstance(HOTP.HashAlgorithm algorithm, byte[] K) {
+		HMAC hmac = switch (algorithm) {
+			case SHA1 -> new SHA1();
+			case SHA256 -> new SHA256();
+			case SHA512 -> new SHA512();
+		};
+		hmac.init(K);
+		return hmac;
+	}
+
+	/** @return an HMAC with the same key and its own buffers */
+	abstract HMAC copy();
+
+	int getMacLength() {
+		return macLength;
+	}
+
+	/** @return the MAC of text */
+	byte[] doFinal(byte[] text) {
+		byte[] mac = new byte[macLength];
+		doFinal(text, 0, text.length, mac, 0);
+		return mac;
+	}
+
+	/**
+	 * Writes the MAC of text[textOff..textOff + length) to out[outOff..outOff + getMacLength()).
+	 * Texts shorter than a block, such as HOTP counters, cost one inner and one outer compression.
+	 */
+	void doFinal(byte[] text, int textOff, int length, byte[] out, int outOff) {
+		// H(K XOR opad, H(K XOR ipad, text))
+		loadMidstate(true);
+		hash(text, textOff, length, blockSize);
+		storeDigest(inner, 0);
+		loadMidstate(false);
+		hash(inner, 0, macLength, blockSize);
+		storeDigest(out, outOff);
+	}
+
+	/**
+	 * Computes and saves the midstates for the key, as in steps 1 to 3 and 6 of RFC 2104 Sec. 2.
+	 * Copies share the midstates, so this rekeys them too; it allocates nothing, so one instance can be rekeyed for each of many secrets.
+	 */
+	void init(byte[] K) {
+		if (K.length > blockSize) {
+			// "Applications that use keys longer than B bytes will first hash the key" (page 3).
+			loadInitialState();
+			hash(K, 0, K.length, 0);
+			storeDigest(K0, 0);
+		} else {
+			System.arraycopy(K, 0, K0, 0, K.length);
+			Arrays.fill(K0, K.length, blockSize, (byte) 0);
+		}
+		absorbPaddedKey(IPAD, true);
+		absorbPaddedKey(OPAD, false);
+		Arrays.fill(K0, (byte) 0);
+		Arrays.fill(block, (byte) 0);
+	}
+
+	/**
+	 * Zeroizes the keyed midstates, which copies share, along with this instance's working buffers.
+	 * The key is gone afterwards, so init must be called before the next MAC.
+	 */
+	void clear() {
+		Arrays.fill(block, (byte) 0);
+		Arrays.fill(inner, (byte) 0);
+		clearState();
+	}
+
+	/** Saves the hash state after K0 XOR pad as a midstate. */
+	private void absorbPaddedKey(byte pad, boolean isInner) {
+		for (int i = 0; i < blockSize; i++) {
+			block[i] = (byte) (K0[i] ^ pad);
+		}
+		loadInitialState();
+		compress();
+		saveMidstate(isInner);
+	}
+
+	/**
+	 * Absorbs data and its padding into the working state.
+	 * @param prefixLength number of bytes already absorbed into the working state
+	 */
+	private void hash(byte[] data, int offset, int length, int prefixLength) {
+		long bitLength = (long) (prefixLength + length) * Byte.SIZE;
+		int end = offset + length;
+		for (; end - offset >= blockSize; offset += blockSize) {
+			System.arraycopy(data, offset, block, 0, blockSize);
+			compress();
+		}
+		int remaining = end - offset;
+		System.arraycopy(data, offset, block, 0, remaining);
+		block[remaining] = PADDING;
+		if (remaining + 1 > blockSize - lengthFieldBytes) {
+			// The length field does not fit, so it goes in an extra block.
+			Arrays.fill(block, remaining + 1, blockSize, (byte) 0);
+			compress();
+			Arrays.fill(block, 0, blockSize - Long.BYTES, (byte) 0);
+		} else {
+			Arrays.fill(block, remaining + 1, blockSize - Long.BYTES, (byte) 0);
+		}
+		Bytes.BIG_ENDIAN_LONGS.set(block, blockSize - Long.BYTES, bitLength);
+		compress();
+	}
+
+	/** Sets the working state to the initial hash value H(0). */
+	abstract void loadInitialState();
+
+	/** Saves the working state as the inner or outer midstate. */
+	abstract void saveMidstate(boolean isInner);
+
+	/** Sets the working state to the inner or outer midstate. */
+	abstract void loadMidstate(boolean isInner);
+
+	/** Updates the working state with block. */
+	abstract void compress();
+
+	/** Writes the working state to out[outOff..outOff + getMacLength()). */
+	abstract void storeDigest(byte[] out, int outOff);
+
+	/** Zeroizes the midstates, the working state, and the message schedule. */
+	abstract void clearState();
+
+	/** HMAC-SHA-1 (FIPS 180-4 Sec. 6.1). */
+	static final class SHA1 extends HMAC {
+		private static final int[] H0 = {0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476, 0xc3d2e1f0};
+
+		private final int[] innerState;
+		private final int[] outerState;
+		private final int[] H = new int[5];
+		private final int[] W = new int[80];
+
+		SHA1() {
+			this(new int[5], new int[5]);
+		}
+
+		private SHA1(int[] innerState, int[] outerState) {
+			super(64, 20, 8);
+			this.innerState = innerState;
+			this.outerState = outerState;
+		}
+
+		@Override
+		HMAC copy() {
+			return new SHA1(innerState, outerState);
+		}
+
+		@Override
+		void loadInitialState() {
+			System.arraycopy(H0, 0, H, 0, H.length);
+		}
+
+		@Override
+		void saveMidstate(boolean isInner) {
+			System.arraycopy(H, 0, isInner ? innerState : outerState, 0, H.length);
+		}
+
+		@Override
+		void loadMidstate(boolean isInner) {
+			System.arraycopy(isInner ? innerState : outerState, 0, H, 0, H.length);
+		}
+
+		@Override
+		void compress() {
+			for (int t = 0; t < 16; t++) {
+				W[t] = (int) Bytes.BIG_ENDIAN_INTS.get(block, t * Integer.BYTES);
+			}
+			for (int t = 16; t < 80; t++) {
+				W[t] = Integer.rotateLeft(W[t - 3] ^ W[t - 8] ^ W[t - 14] ^ W[t - 16], 1);
+			}
+			int a = H[0], b = H[1], c = H[2], d = H[3], e = H[4];
+			for (int t = 0; t < 80; t++) {
+				int f, K;
+				if (t < 20) {
+					f = (b & c) | (~b & d);
+					K = 0x5a827999;
+				} else if (t < 40) {
+					f = b ^ c ^ d;
+					K = 0x6ed9eba1;
+				} else if (t < 60) {
+					f = (b & c) | (b & d) | (c & d);
+					K = 0x8f1bbcdc;
+				} else {
+					f = b ^ c ^ d;
+					K = 0xca62c1d6;
+				}
+				int T = Integer.rotateLeft(a, 5) + f + e + K + W[t];
+				e = d;
+				d = c;
+				c = Integer.rotateLeft(b, 30);
+				b = a;
+				a = T;
+			}
+			H[0] += a;
+			H[1] += b;
+			H[2] += c;
+			H[3] += d;
+			H[4] += e;
+		}
+
+		@Override
+		void storeDigest(byte[] out, int outOff) {
+			for (int i = 0; i < H.length; i++) {
+				Bytes.BIG_ENDIAN_INTS.set(out, outOff + i * Integer.BYTES, H[i]);
+			}
+		}
+
+		@Override
+		void clearState() {
+			Arrays.fill(innerState, 0);
+			Arrays.fill(outerState, 0);
+			Arrays.fill(H, 0);
+			Arrays.fill(W, 0);
+		}
+	}
+
+	/** HMAC-SHA-256 (FIPS 180-4 Sec. 6.2). */
+	static final class SHA256 extends HMAC {
+		private static final int[] H0 = {
+			0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+		};
+		/** The first 32 bits of the fractional parts of the cube roots of the first 64 primes (Sec. 4.2.2). */
+		private static final int[] K = {
+			0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+			0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+			0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+			0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+			0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+			0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+			0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+			0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+		};
+
+		private final int[] innerState;
+		private final int[] outerState;
+		private final int[] H = new int[8];
+		private final int[] W = new int[64];
+
+		SHA256() {
+			this(new int[8], new int[8]);
+		}
+
+		private SHA256(int[] innerState, int[] outerState) {
+			super(64, 32, 8);
+			this.innerState = innerState;
+			this.outerState = outerState;
+		}
+
+		@Override
+		HMAC copy() {
+			return new SHA256(innerState, outerState);
+		}
+
+		@Override
+		void loadInitialState() {
+			System.arraycopy(H0, 0, H, 0, H.length);
+		}
+
+		@Override
+		void saveMidstate(boolean isInner) {
+			System.arraycopy(H, 0, isInner ? innerState : outerState, 0, H.length);
+		}
+
+		@Override
+		void loadMidstate(boolean isInner) {
+			System.arraycopy(isInner ? innerState : outerState, 0, H, 0, H.length);
+		}
+
+		@Override
+		void compress() {
+			for (int t = 0; t < 16; t++) {
+				W[t] = (int) Bytes.BIG_ENDIAN_INTS.get(block, t * Integer.BYTES);
+			}
+			for (int t = 16; t < 64; t++) {
+				int w15 = W[t - 15];
+				int w2 = W[t - 2];
+				int sigma0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+				int sigma1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+				W[t] = sigma1 + W[t - 7] + sigma0 + W[t - 16];
+			}
+			int a = H[0], b = H[1], c = H[2], d = H[3], e = H[4], f = H[5], g = H[6], h = H[7];
+			for (int t = 0; t < 64; t++) {
+				int Sigma1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+				int Ch = (e & f) ^ (~e & g);
+				int T1 = h + Sigma1 + Ch + K[t] + W[t];
+				int Sigma0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+				int Maj = (a & b) ^ (a & c) ^ (b & c);
+				int T2 = Sigma0 + Maj;
+				h = g;
+				g = f;
+				f = e;
+				e = d + T1;
+				d = c;
+				c = b;
+				b = a;
+				a = T1 + T2;
+			}
+			H[0] += a;
+			H[1] += b;
+			H[2] += c;
+			H[3] += d;
+			H[4] += e;
+			H[5] += f;
+			H[6] += g;
+			H[7] += h;
+		}
+
+		@Override
+		void storeDigest(byte[] out, int outOff) {
+			for (int i = 0; i < H.length; i++) {
+				Bytes.BIG_ENDIAN_INTS.set(out, outOff + i * Integer.BYTES, H[i]);
+			}
+		}
+
+		@Override
+		void clearState() {
+			Arrays.fill(innerState, 0);
+			Arrays.fill(outerState, 0);
+			Arrays.fill(H, 0);
+			Arrays.fill(W, 0);
+		}
+	}
+
+	/** HMAC-SHA-512 (FIPS 180-4 Sec. 6.4). */
+	static final class SHA512 extends HMAC {
+		private static final long[] H0 = {
+			0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+			0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+		};
+		/** The first 64 bits of the fractional parts of the cube roots of the first 80 primes (Sec. 4.2.3). */
+		private static final long[] K = {
+			0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL,
+			0x3956c25bf348b538L, 0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+			0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L,
+			0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L, 0xc19bf174cf692694L,
+			0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+			0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L,
+			0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L,
+			0xc6e00bf33da88fc2L, 0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+			0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL,
+			0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L, 0x92722c851482353bL,
+			0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+			0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+			0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L,
+			0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+			0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+			0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L, 0xc67178f2e372532bL,
+			0xca273eceea26619cL, 0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+			0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL,
+			0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL,
+			0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L
+		};
+
+		private final long[] innerState;
+		private final long[] outerState;
+		private final long[] H = new long[8];
+		private final long[] W = new long[80];
+
+		SHA512() {
+			this(new long[8], new long[8]);
+		}
+
+		private SHA512(long[] innerState, long[] outerState) {
+			// The 128-bit length field never needs its upper half here, since lengths are ints.
+			super(128, 64, 16);
+			this.innerState = innerState;
+			this.outerState = outerState;
+		}
+
+		@Override
+		HMAC copy() {
+			return new SHA512(innerState, outerState);
+		}
+
+		@Override
+		void loadInitialState() {
+			System.arraycopy(H0, 0, H, 0, H.length);
+		}
+
+		@Override
+		void saveMidstate(boolean isInner) {
+			System.arraycopy(H, 0, isInner ? innerState : outerState, 0, H.length);
+		}
+
+		@Override
+		void loadMidstate(boolean isInner) {
+			System.arraycopy(isInner ? innerState : outerState, 0, H, 0, H.length);
+		}
+
+		@Override
+		void compress() {
+			for (int t = 0; t < 16; t++) {
+				W[t] = (long) Bytes.BIG_ENDIAN_LONGS.get(block, t * Long.BYTES);
+			}
+			for (int t = 16; t < 80; t++) {
+				long w15 = W[t - 15];
+				long w2 = W[t - 2];
+				long sigma0 = Long.rotateRight(w15, 1) ^ Long.rotateRight(w15, 8) ^ (w15 >>> 7);
+				long sigma1 = Long.rotateRight(w2, 19) ^ Long.rotateRight(w2, 61) ^ (w2 >>> 6);
+				W[t] = sigma1 + W[t - 7] + sigma0 + W[t - 16];
+			}
+			long a = H[0], b = H[1], c = H[2], d = H[3], e = H[4], f = H[5], g = H[6], h = H[7];
+			for (int t = 0; t < 80; t++) {
+				long Sigma1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41);
+				long Ch = (e & f) ^ (~e & g);
+				long T1 = h + Sigma1 + Ch + K[t] + W[t];
+				long Sigma0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39);
+				long Maj = (a & b) ^ (a & c) ^ (b & c);
+				long T2 = Sigma0 + Maj;
+				h = g;
+				g = f;
+				f = e;
+				e = d + T1;
+				d = c;
+				c = b;
+				b = a;
+				a = T1 + T2;
+			}
+			H[0] += a;
+			H[1] += b;
+			H[2] += c;
+			H[3] += d;
+			H[4] += e;
+			H[5] += f;
+			H[6] += g;
+			H[7] += h;
+		}
+
+		@Override
+		void storeDigest(byte[] out, int outOff) {
+			for (int i = 0; i < H.length; i++) {
+				Bytes.BIG_ENDIAN_LONGS.set(out, outOff + i * Long.BYTES, H[i]);
+			}
+		}
+
+		@Override
+		void clearState() {
+			Arrays.fill(innerState, 0L);
+			Arrays.fill(outerState, 0L);
+			Arrays.fill(H, 0L);
+			Arrays.fill(W, 0L);
+		}
+	}
+}
@@ -1,21 +1,27 @@
 package com.linusbrogan.pkg.crypto;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.security.InvalidKeyException;
-import java.security.Key;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /** An implementation of [RFC 4226](https://datatracker.ietf.org/doc/html/rfc4226) */
 public class HOTP {
 	// "Implementations MUST extract a 6-digit code at a minimum" (page 7).
 	private static final int DEFAULT_DIGITS = 6;
-	private static final int MINIMUM_DIGITS = 6;
+	static final int MINIMUM_DIGITS = 6;
 	// Truncating to 31 bits yields at most floor(31 * ln(2) / ln(10)) = 9 digits.
-	private static final int MAXIMUM_DIGITS = 9;
+	static final int MAXIMUM_DIGITS = 9;
 	// "The length of the shared secret MUST be at least 128 bits" (page 5).
-	private static final int MINIMUM_SECRET_BYTES = 128 / 8;
+	static final int MINIMUM_SECRET_BYTES = 128 / 8;
+	private static final int COUNTER_BYTES = 8;
+	/** 10^Digit for each supported number of digits. */
+	private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+	/** A context for each hash algorithm, for each thread, rekeyed by the static methods for every secret and zeroized after it. */
+	private static final ThreadLocal<Context[]> STATIC_CONTEXTS = ThreadLocal.withInitial(() -> new Context[HashAlgorithm.values().length]);
+	/** Resynchronization windows of fewer than this many counters are checked on the calling thread. */
+	public static final int PARALLEL_WINDOW = 1 << 12;
+	/** Counters checked by each task of a parallel resynchronization. */
+	static final int CHUNK_COUNTERS = 1 << 10;
 
 	// Supported hash algorithms.
 	// Only HMAC-SHA-1 is specified in HOTP, but TOTP also allows HMAC-SHA-256 and HMAC-SHA-512.
@@ -30,6 +36,284 @@ public class HOTP {
 		};
 	}
 
+	private final HashAlgorithm algorithm;
+	/** Buffers and an HMAC for each thread, copied from one keyed prototype so the key setup runs once. */
+	private final ThreadLocal<Context> contexts;
+
+	/**
+	 * Creates a reusable generator bound to a secret.
+	 * Each thread keeps its own keyed HMAC and buffers, so generating a value costs two compression function calls and allocates nothing after warm-up.
+	 * @param K "shared secret between client and server" (page 5).
+	 * @param algorithm HMAC algorithm
+	 */
+	public HOTP(byte[] K, HashAlgorithm algorithm) {
+		assert K.length >= MINIMUM_SECRET_BYTES;
+		this.algorithm = algorithm;
+		HMAC prototype = HMAC.getInstance(algorithm, K);
+		contexts = ThreadLocal.withInitial(() -> new Context(prototype.copy()));
+	}
+
+	/** Per-thread state of a generator. */
+	static class Context {
+		private final HMAC mac;
+		private final byte[] counter = new byte[COUNTER_BYTES];
+		private final byte[] hmac;
+
+		Context(HMAC mac) {
+			this.mac = mac;
+			this.hmac = new byte[mac.getMacLength()];
+		}
+
+		/** Rekeys the HMAC, along with any copies of it. */
+		void init(byte[] K) {
+			mac.init(K);
+		}
+
+		/** Zeroizes the HMAC's keyed midstates and the buffers, so that the secret does not outlive its use. */
+		void clear() {
+			mac.clear();
+			Arrays.fill(counter, (byte) 0);
+			Arrays.fill(hmac, (byte) 0);
+		}
+
+		/** @return the HMAC of the counter, in a buffer reused by the next call */
+		byte[] HMAC(long C) {
+			Bytes.BIG_ENDIAN_LONGS.set(counter, 0, C);
+			mac.doFinal(counter, 0, COUNTER_BYTES, hmac, 0);
+			return hmac;
+		}
+
+		/** @return the HMAC of a counter array of any length, in a buffer reused by the next call */
+		byte[] HMAC(byte[] C) {
+			mac.doFinal(C, 0, C.length, hmac, 0);
+			return hmac;
+		}
+	}
+
+	public HashAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Generates a 6-digit HOTP value with the bound secret.
+	 * @param C "8-byte counter value, the moving factor" (page 5).
+	 */
+	public int generate(byte[] C) {
+		return generate(C, DEFAULT_DIGITS);
+	}
+
+	/**
+	 * Generates an HOTP value with the bound secret.
+	 * @param C "8-byte counter value, the moving factor" (page 5).
+	 * @param Digit "number of digits in an HOTP value" (page 6).
+	 */
+	public int generate(byte[] C, int Digit) {
+		assert Digit >= MINIMUM_DIGITS;
+		assert Digit <= MAXIMUM_DIGITS;
+
+		// HMAC the array as given, so counters that are not 8 bytes long are neither truncated nor rejected.
+		return Truncate(contexts.get().HMAC(C), Digit);
+	}
+
+	/**
+	 * Generates a 6-digit HOTP value with the bound secret.
+	 * @param C counter value, the moving factor
+	 */
+	public int generate(long C) {
+		return generate(C, DEFAULT_DIGITS);
+	}
+
+	/**
+	 * Generates an HOTP value with the bound secret, without allocating after warm-up.
+	 * @param C counter value, the moving factor
+	 * @param Digit "number of digits in an HOTP value" (page 6).
+	 */
+	public int generate(long C, int Digit) {
+		assert Digit >= MINIMUM_DIGITS;
+		assert Digit <= MAXIMUM_DIGITS;
+
+		return Truncate(contexts.get().HMAC(C), Digit);
+	}
+
+	/**
+	 * Validates a 6-digit HOTP value against the look-ahead window of Sec. 7.2 with the bound secret.
+	 * @param code HOTP value sent by the client
+	 * @param C the server's counter
+	 * @param window look-ahead parameter s; the counters C..C+s are checked
+	 * @return the offset from C of the first matching counter, or -1; after a match the server's counter becomes C + offset + 1
+	 */
+	public int verify(int code, long C, int window) {
+		return verify(code, C, window, DEFAULT_DIGITS);
+	}
+
+	/**
+	 * Validates an HOTP value against the look-ahead window of Sec. 7.2 with the bound secret.
+	 * Every counter in the window is tried, and the comparison does not branch on the code, so the time taken does not depend on where or whether it matched.
+	 * @param code HOTP value sent by the client
+	 * @param C the server's counter
+	 * @param window look-ahead parameter s; the counters C..C+s are checked
+	 * @param Digit "number of digits in an HOTP value" (page 6).
+	 * @return the offset from C of the first matching counter, or -1
+	 */
+	public int verify(int code, long C, int window, int Digit) {
+		assert window >= 0;
+		// The window holds window + 1 counters, which must fit in an int.
+		assert window < Integer.MAX_VALUE;
+		assert Digit >= MINIMUM_DIGITS;
+		assert Digit <= MAXIMUM_DIGITS;
+
+		return firstMatch(contexts.get(), code, C, window + 1, Digit);
+	}
+
+	/**
+	 * Resynchronizes the counter, as in Sec. 7.4, by finding where a sequence of consecutive HOTP values from the client falls in a large look-ahead window.
+	 * Windows of at least PARALLEL_WINDOW counters are split across the common fork-join pool.
+	 * @param codes consecutive HOTP values sent by the client
+	 * @param C the server's counter
+	 * @param window look-ahead parameter s; the sequence may start at any of C..C+s
+	 * @param Digit "number of digits in an HOTP value" (page 6).
+	 * @return the offset from C of the first counter where the whole sequence matches, or -1; after a match the server's counter becomes C + offset + codes.length
+	 */
+	public int resynchronize(int[] codes, long C, int window, int Digit) {
+		return resynchronize(codes, C, window, Digit, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Resynchronizes the counter like resynchronize, splitting windows of at least PARALLEL_WINDOW counters across pool.
+	 * @param pool pool that runs the chunks
+	 */
+	public int resynchronize(int[] codes, long C, int window, int Digit, ForkJoinPool pool) {
+		assert codes.length > 0;
+		assert window >= 0;
+		// The window holds window + 1 counters, which must fit in an int.
+		assert window < Integer.MAX_VALUE;
+		assert Digit >= MINIMUM_DIGITS;
+		assert Digit <= MAXIMUM_DIGITS;
+
+		int counters = window + 1;
+		if (counters < PARALLEL_WINDOW) {
+			return firstMatch(contexts.get(), codes, C, 0, counters, Digit);
+		}
+		return pool.invoke(new MatchTask(this, codes, C, 0, counters, Digit));
+	}
+
+	/**
+	 * Validates a 6-digit HOTP value against the look-ahead window of Sec. 7.2.
+	 * The key is set up once for the whole window.
+	 * @param K "shared secret between client and server" (page 5).
+	 * @param code HOTP value sent by the client
+	 * @param C the server's counter
+	 * @param window look-ahead parameter s; the counters C..C+s are checked
+	 * @return the offset from C of the first matching counter, or -1
+	 */
+	public static int verify(byte[] K, int code, long C, int window) {
+		return verify(K, code, C, window, DEFAULT_DIGITS, HashAlgorithm.SHA1);
+	}
+
+	/**
+	 * Validates an HOTP value against the look-ahead window of Sec. 7.2.
+	 * The key is set up once for the whole window.
+	 * @param K "shared secret between client and server" (page 5).
+	 * @param code HOTP value sent by the client
+	 * @param C the server's counter
+	 * @param window look-ahead parameter s; the counters C..C+s are checked
+	 * @param Digit "number of digits in an HOTP value" (page 6).
+	 * @param algorithm HMAC algorithm
+	 * @return the offset from C of the first matching counter, or -1
+	 */
+	public static int verify(byte[] K, int code, long C, int window, int Digit, HashAlgorithm algorithm) {
+		assert window >= 0;
+		// The window holds window + 1 counters, which must fit in an int.
+		assert window < Integer.MAX_VALUE;
+		assert Digit >= MINIMUM_DIGITS;
+		assert Digit <= MAXIMUM_DIGITS;
+		assert K.length >= MINIMUM_SECRET_BYTES;
+
+		Context context = context(algorithm);
+		context.init(K);
+		try {
+			return firstMatch(context, code, C, window + 1, Digit);
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Checks every offset in [0, counters) for a single code without stopping at a match, allocating nothing.
+	 * @return the first offset at which code equals the HOTP value, or -1
+	 */
+	private static int firstMatch(Context context, int code, long C, int counters, int Digit) {
+		int match = -1;
+		for (int offset = 0; offset < counters; offset++) {
+			match = firstMatch(match, offset, Truncate(context.HMAC(C + offset), Digit) ^ code);
+		}
+		return match;
+	}
+
+	/**
+	 * Checks every offset in [from, to) without stopping at a match.
+	 * @return the first offset at which codes equal the HOTP values of consecutive counters, or -1
+	 */
+	private static int firstMatch(Context context, int[] codes, long C, int from, int to, int Digit) {
+		int match = -1;
+		for (int offset = from; offset < to; offset++) {
+			int difference = 0;
+			for (int i = 0; i < codes.length; i++) {
+				difference |= Truncate(context.HMAC(C + offset + i), Digit) ^ codes[i];
+			}
+			match = firstMatch(match, offset, difference);
+		}
+		return match;
+	}
+
+	/**
+	 * Branch-free step of a constant time search.
+	 * @param match the first matching offset so far, or -1
+	 * @param difference the bitwise difference between the expected and received values at offset
+	 * @return offset if difference is 0 and there was no earlier match, else match
+	 */
+	static int firstMatch(int match, int offset, int difference) {
+		// 1 if difference is 0, else 0.
+		int matched = ~(difference | -difference) >>> 31;
+		// Take this offset only if it matched and no earlier one did.
+		int take = -(matched & (match >>> 31));
+		return match ^ ((match ^ offset) & take);
+	}
+
+	/** Checks a range of offsets, forking halves until each is at most CHUNK_COUNTERS long. */
+	private static class MatchTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+
+		private final HOTP hotp;
+		private final int[] codes;
+		private final long C;
+		private final int from;
+		private final int to;
+		private final int Digit;
+
+		MatchTask(HOTP hotp, int[] codes, long C, int from, int to, int Digit) {
+			this.hotp = hotp;
+			this.codes = codes;
+			this.C = C;
+			this.from = from;
+			this.to = to;
+			this.Digit = Digit;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (to - from <= CHUNK_COUNTERS) {
+				return firstMatch(hotp.contexts.get(), codes, C, from, to, Digit);
+			}
+			int middle = from + (to - from) / 2;
+			MatchTask upper = new MatchTask(hotp, codes, C, middle, to, Digit);
+			upper.fork();
+			int lower = new MatchTask(hotp, codes, C, from, middle, Digit).compute();
+			int higher = upper.join();
+			return lower >= 0 ? lower : higher;
+		}
+	}
+
 	/**
 	 * Generates a 6-digit HOTP value.
 	 * @param K "shared secret between client and server" (page 5).
@@ -62,7 +346,47 @@ public class HOTP {
 		assert Digit <= MAXIMUM_DIGITS;
 		assert K.length >= MINIMUM_SECRET_BYTES;
 
-		return Truncate(HMAC(algorithm, K, C), Digit);
+		// HMAC the array as given, as HMAC(algorithm, K, C) does, so counters that are not 8 bytes long are neither truncated nor rejected.
+		Context context = context(algorithm);
+		context.init(K);
+		try {
+			return Truncate(context.HMAC(C), Digit);
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Generates an HOTP value.
+	 * @param K "shared secret between client and server" (page 5).
+	 * @param C counter value, the moving factor
+	 * @param Digit "number of digits in an HOTP value" (page 6).
+	 * @param algorithm HMAC algorithm
+	 */
+	public static int HOTP(byte[] K, long C, int Digit, HashAlgorithm algorithm) {
+		assert Digit >= MINIMUM_DIGITS;
+		assert Digit <= MAXIMUM_DIGITS;
+		assert K.length >= MINIMUM_SECRET_BYTES;
+
+		// Rekey this thread's HMAC rather than allocating one, and zeroize it once the value is computed.
+		Context context = context(algorithm);
+		context.init(K);
+		try {
+			return Truncate(context.HMAC(C), Digit);
+		} finally {
+			context.clear();
+		}
+	}
+
+	/** @return this thread's context for algorithm, for the static methods and OTPBatch to rekey */
+	static Context context(HashAlgorithm algorithm) {
+		Context[] contexts = STATIC_CONTEXTS.get();
+		Context context = contexts[algorithm.ordinal()];
+		if (context == null) {
+			context = new Context(HMAC.getInstance(algorithm, new byte[0]));
+			contexts[algorithm.ordinal()] = context;
+		}
+		return context;
 	}
 
 	/**
@@ -71,16 +395,7 @@ public class HOTP {
 	 * @param C The HMAC data
 	 */
 	static byte[] HMAC(HashAlgorithm algorithm, byte[] K, byte[] C) {
-		try {
-			Key key = new SecretKeySpec(K, algorithm.algorithm);
-			Mac mac = Mac.getInstance(algorithm.algorithm);
-			mac.init(key);
-			byte[] input = C;
-			return mac.doFinal(input);
-		} catch (NoSuchAlgorithmException | InvalidKeyException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return HMAC.getInstance(algorithm, K).doFinal(C);
 	}
 
 	/**
@@ -89,7 +404,7 @@ public class HOTP {
 	 */
 	static int Truncate(byte[] hmac, int Digit) {
 		final int Snum = DT(hmac);
-		final int D = Snum % (int) Math.pow(10, Digit);
+		final int D = Snum % POWERS_OF_TEN[Digit];
 		return D;
 	}
 
@@ -99,9 +414,8 @@ public class HOTP {
 	 * @param string a 20-byte HMAC
 	 */
 	static int DT(byte[] string) {
-		byte Offset = (byte) (string[string.length - 1] & 0xf);
-		byte[] P = Arrays.copyOfRange(string, Offset, Offset + 4);
-		int dynamicBinaryCode = (P[0] & 0x7f) << 24 | (P[1] & 0xff) << 16 | (P[2] & 0xff) << 8 | (P[3] & 0xff);
+		int Offset = string[string.length - 1] & 0xf;
+		int dynamicBinaryCode = (string[Offset] & 0x7f) << 24 | (string[Offset + 1] & 0xff) << 16 | (string[Offset + 2] & 0xff) << 8 | (string[Offset + 3] & 0xff);
 		return dynamicBinaryCode;
 	}
 }
@@ -0,0 +1,37 @@
+package com.linusbrogan.pkg.crypto;
+
+/**
+ * A block cipher mode that processes a message in pieces of any size.
+ * Only a partial block is buffered between calls, so memory use does not depend on the message length.
+ * The IV is supplied to init and is not written to or read from the data.
+ */
+public interface IncrementalCipher {
+	/** @return the length of the IVs passed to init, which the stream and channel wrappers write before the ciphertext */
+	int getIVLength();
+
+	/**
+	 * Starts a new message, discarding any unfinished one.
+	 * @param encrypt true to encrypt, false to decrypt
+	 * @param iv initialization vector of getIVLength() bytes
+	 */
+	void init(boolean encrypt, byte[] iv);
+
+	/**
+	 * @param length number of bytes that will be passed to update
+	 * @return the largest number of bytes that update with length bytes, followed by doFinal, can write
+	 */
+	int getOutputSize(int length);
+
+	/**
+	 * Processes length bytes of in[inOff..], writing whatever output is ready to out[outOff..].
+	 * @return number of bytes written
+	 */
+	int update(byte[] in, int inOff, int length, byte[] out, int outOff);
+
+	/**
+	 * Finishes the message, writing any remaining output to out[outOff..].
+	 * The cipher must be initialized again before the next message.
+	 * @return number of bytes written
+	 */
+	int doFinal(byte[] out, int outOff);
+}
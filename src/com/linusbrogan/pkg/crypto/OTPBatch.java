@@ -0,0 +1,146 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes HOTP and TOTP values for many secrets at once.
+ * Each worker thread rekeys one HMAC per algorithm for every secret, so the batch allocates nothing per secret beyond the fork-join tasks.
+ * The HMAC is zeroized when the worker finishes its range, so no secret outlives the batch in a thread-local.
+ */
+public class OTPBatch {
+	/** Batches of fewer than this many secrets are computed on the calling thread. */
+	public static final int PARALLEL_THRESHOLD = 1 << 10;
+	/** Secrets computed by each task of a parallel batch. */
+	static final int CHUNK_SECRETS = 1 << 8;
+	// Default system parameters (RFC 6238, page 4)
+	private static final long DEFAULT_START_TIME = 0;
+	private static final long DEFAULT_TIME_STEP = 30;
+
+	private OTPBatch() {}
+
+	/**
+	 * Generates an HOTP value for each secret.
+	 * @param K shared secrets
+	 * @param C counter for each secret
+	 * @param Digit "number of digits in an HOTP value" (RFC 4226, page 6).
+	 * @param algorithm HMAC algorithm
+	 * @return the HOTP value for each secret
+	 */
+	public static int[] HOTP(byte[][] K, long[] C, int Digit, HOTP.HashAlgorithm algorithm) {
+		int[] values = new int[K.length];
+		HOTP(K, C, Digit, algorithm, values, 0, ForkJoinPool.commonPool());
+		return values;
+	}
+
+	/**
+	 * Generates an HOTP value for each secret into a caller's array, splitting batches of at least PARALLEL_THRESHOLD secrets across pool.
+	 * @param K shared secrets
+	 * @param C counter for each secret
+	 * @param Digit "number of digits in an HOTP value" (RFC 4226, page 6).
+	 * @param algorithm HMAC algorithm
+	 * @param values receives the value for K[i] at values[valuesOff + i]
+	 * @param pool pool that runs the chunks
+	 */
+	public static void HOTP(byte[][] K, long[] C, int Digit, HOTP.HashAlgorithm algorithm, int[] values, int valuesOff, ForkJoinPool pool) {
+		assert C.length == K.length;
+		run(new BatchTask(K, C, 0, Digit, algorithm, values, valuesOff, 0, K.length), pool);
+	}
+
+	/**
+	 * Generates the TOTP value of each secret at one time, with the default system parameters.
+	 * @param K shared secrets
+	 * @param now Unix time for the TOTPs
+	 * @param Digit TOTP length
+	 * @return the TOTP value for each secret
+	 */
+	public static int[] TOTP(byte[][] K, long now, int Digit) {
+		int[] values = new int[K.length];
+		TOTP(K, now, Digit, DEFAULT_START_TIME, DEFAULT_TIME_STEP, HOTP.HashAlgorithm.SHA1, values, 0, ForkJoinPool.commonPool());
+		return values;
+	}
+
+	/**
+	 * Generates the TOTP value of each secret at one time into a caller's array, splitting batches of at least PARALLEL_THRESHOLD secrets across pool.
+	 * @param K shared secrets
+	 * @param now Unix time for the TOTPs
+	 * @param Digit TOTP length
+	 * @param T0 "the Unix time to start counting time steps" (RFC 6238, page 4)
+	 * @param X "the time step in seconds" (RFC 6238, page 4)
+	 * @param algorithm HMAC algorithm
+	 * @param values receives the value for K[i] at values[valuesOff + i]
+	 * @param pool pool that runs the chunks
+	 */
+	public static void TOTP(byte[][] K, long now, int Digit, long T0, long X, HOTP.HashAlgorithm algorithm, int[] values, int valuesOff, ForkJoinPool pool) {
+		long timeSteps = (now - T0) / X;
+		run(new BatchTask(K, null, timeSteps, Digit, algorithm, values, valuesOff, 0, K.length), pool);
+	}
+
+	private static void run(BatchTask task, ForkJoinPool pool) {
+		assert task.Digit >= HOTP.MINIMUM_DIGITS;
+		assert task.Digit <= HOTP.MAXIMUM_DIGITS;
+		assert task.values.length - task.valuesOff >= task.K.length;
+
+		if (task.K.length < PARALLEL_THRESHOLD) {
+			task.computeRange();
+		} else {
+			pool.invoke(task);
+		}
+	}
+
+	/** Computes a range of secrets, forking halves until each is at most CHUNK_SECRETS long. */
+	private static class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final byte[][] K;
+		/** Counter for each secret, or null to use counter for all of them. */
+		private final long[] C;
+		private final long counter;
+		private final int Digit;
+		private final HOTP.HashAlgorithm algorithm;
+		private final int[] values;
+		private final int valuesOff;
+		private final int from;
+		private final int to;
+
+		BatchTask(byte[][] K, long[] C, long counter, int Digit, HOTP.HashAlgorithm algorithm, int[] values, int valuesOff, int from, int to) {
+			this.K = K;
+			this.C = C;
+			this.counter = counter;
+			this.Digit = Digit;
+			this.algorithm = algorithm;
+			this.values = values;
+			this.valuesOff = valuesOff;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= CHUNK_SECRETS) {
+				computeRange();
+				return;
+			}
+			int middle = from + (to - from) / 2;
+			invokeAll(
+				new BatchTask(K, C, counter, Digit, algorithm, values, valuesOff, from, middle),
+				new BatchTask(K, C, counter, Digit, algorithm, values, valuesOff, middle, to)
+			);
+		}
+
+		/** Computes the whole range on this thread. */
+		void computeRange() {
+			HOTP.Context context = HOTP.context(algorithm);
+			try {
+				for (int i = from; i < to; i++) {
+					assert K[i].length >= HOTP.MINIMUM_SECRET_BYTES;
+					context.init(K[i]);
+					values[valuesOff + i] = HOTP.Truncate(context.HMAC(C == null ? counter : C[i]), Digit);
+				}
+			} finally {
+				// Do not leave the last secret's midstates in the thread-local context.
+				context.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the last time step accepted for each user, so that a TOTP value cannot be accepted twice.
+ * "the verifier MUST NOT accept the second attempt of the OTP after the successful validation has been issued for the first OTP" (RFC 6238, page 7).
+ * Steps that fall behind the skew window of the latest time seen are rejected outright, so their entries can be evicted.
+ * Expired entries are evicted incrementally through an ExpiryQueue.
+ * Safe for concurrent use: each user is updated atomically, users in different hash bins never contend, and the bound is reserved atomically before a user is added.
+ * @param <U> user identifier
+ */
+public class ReplayCache<U> {
+	private static final int ACCEPTED = 0;
+	private static final int REJECTED = 1;
+	private static final int FULL = 2;
+
+	private final ConcurrentHashMap<U, Long> lastSteps = new ConcurrentHashMap<>();
+	/** Users by each step accepted for them. */
+	private final ExpiryQueue<U> expiryQueue = new ExpiryQueue<>(this::forget);
+	/** Number of users remembered, reserved before a user is added. */
+	private final AtomicInteger users = new AtomicInteger();
+	private final int skewSteps;
+	private final int maximumUsers;
+	/** The latest current time step seen. */
+	private final AtomicLong latestStep = new AtomicLong(Long.MIN_VALUE);
+
+	/**
+	 * @param skewSteps number of time steps a value may be behind or ahead of the current one
+	 * @param maximumUsers number of users with an unexpired accepted step that can be remembered at once
+	 */
+	public ReplayCache(int skewSteps, int maximumUsers) {
+		assert skewSteps >= 0;
+		assert maximumUsers > 0;
+		this.skewSteps = skewSteps;
+		this.maximumUsers = maximumUsers;
+	}
+
+	public int getSkewSteps() {
+		return skewSteps;
+	}
+
+	/** @return the number of users remembered, including expired ones not yet evicted */
+	public int size() {
+		return users.get();
+	}
+
+	/**
+	 * Records a step accepted for user.
+	 * Fails closed: when maximumUsers users with unexpired steps are remembered, new users are refused rather than evicting a step that could still be replayed.
+	 * @param user user the value belongs to
+	 * @param step time step the value matched
+	 * @param currentStep time step of the current time
+	 * @return true if step is later than every step previously accepted for user and has not expired, false otherwise
+	 */
+	public boolean accept(U user, long step, long currentStep) {
+		latestStep.accumulateAndGet(currentStep, Math::max);
+		expiryQueue.sweepIncrementally(horizon());
+		while (true) {
+			int result = record(user, step);
+			// When full, evict expired entries until a user is forgotten, and retry.
+			if (result != FULL || expiryQueue.sweep(horizon(), Integer.MAX_VALUE, 1) == 0) {
+				return result == ACCEPTED;
+			}
+		}
+	}
+
+	/** @return ACCEPTED, REJECTED, or FULL if user is new and no user can be added */
+	private int record(U user, long step) {
+		int[] result = new int[1];
+		lastSteps.compute(user, (u, last) -> {
+			// Read the latest step here, since entries behind it may be evicted at any time.
+			if ((last != null && last >= step) || step < horizon()) {
+				result[0] = REJECTED;
+				return last;
+			}
+			if (last == null && !reserve()) {
+				result[0] = FULL;
+				return null;
+			}
+			result[0] = ACCEPTED;
+			expiryQueue.add(u, step);
+			return step;
+		});
+		return result[0];
+	}
+
+	/** @return the earliest step that has not expired */
+	private long horizon() {
+		return latestStep.get() - skewSteps;
+	}
+
+	/** @return whether a user could be counted without exceeding maximumUsers */
+	private boolean reserve() {
+		int count = users.get();
+		while (count < maximumUsers) {
+			if (users.compareAndSet(count, count + 1)) {
+				return true;
+			}
+			count = users.get();
+		}
+		return false;
+	}
+
+	/** @return true if user was forgotten, false if a later step has been accepted for user */
+	private boolean forget(U user, long step) {
+		// Conditional removal, so a step accepted concurrently is kept.
+		if (lastSteps.remove(user, step)) {
+			users.decrementAndGet();
+			return true;
+		}
+		return false;
+	}
+}
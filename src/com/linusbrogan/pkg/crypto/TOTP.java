@@ -6,6 +6,136 @@ public class TOTP {
 	// Default system parameters (page 4)
 	private static final long DEFAULT_START_TIME = 0;
 	private static final long DEFAULT_TIME_STEP = 30;
+	/** Returned by verify when no time step in the window matches. */
+	public static final long NO_MATCH = -1;
+
+	private final HOTP hotp;
+	private final int Digit;
+	private final long T0;
+	private final long X;
+
+	/**
+	 * Creates a reusable generator bound to a secret and the default system parameters.
+	 * @param K shared secret
+	 */
+	public TOTP(byte[] K) {
+		this(K, DEFAULT_DIGITS, DEFAULT_START_TIME, DEFAULT_TIME_STEP, HOTP.HashAlgorithm.SHA1);
+	}
+
+	/**
+	 * Creates a reusable generator bound to a secret and system parameters.
+	 * @param K shared secret
+	 * @param Digit TOTP length
+	 * @param T0 "the Unix time to start counting time steps" (page 4)
+	 * @param X "the time step in seconds" (page 4)
+	 * @param algorithm HMAC algorithm
+	 */
+	public TOTP(byte[] K, int Digit, long T0, long X, HOTP.HashAlgorithm algorithm) {
+		this.hotp = new HOTP(K, algorithm);
+		this.Digit = Digit;
+		this.T0 = T0;
+		this.X = X;
+	}
+
+	public int getDigit() {
+		return Digit;
+	}
+
+	public HOTP.HashAlgorithm getAlgorithm() {
+		return hotp.getAlgorithm();
+	}
+
+	public long getT0() {
+		return T0;
+	}
+
+	public long getX() {
+		return X;
+	}
+
+	/**
+	 * Generates the TOTP value for the current time.
+	 */
+	public int generate() {
+		return generate(now());
+	}
+
+	/**
+	 * Generates a TOTP value.
+	 * @param now Unix time for the TOTP
+	 */
+	public int generate(long now) {
+		return hotp.generate(timeSteps(now), Digit);
+	}
+
+	/**
+	 * Validates a TOTP value against the time steps T - skewSteps..T + skewSteps around the current step T, allowing for clock drift and network delay (Sec. 5.2).
+	 * The bound secret's HMAC context is reused for every step, and every step is compared.
+	 * @param code TOTP value sent by the prover
+	 * @param now Unix time of the verifier
+	 * @param skewSteps number of time steps the prover may be behind or ahead
+	 * @return the matching time step, or NO_MATCH
+	 */
+	public long verify(int code, long now, int skewSteps) {
+		assert skewSteps >= 0;
+		long T = timeSteps(now);
+		long first = Math.max(0, T - skewSteps);
+		int offset = hotp.verify(code, first, (int) (T + skewSteps - first), Digit);
+		return offset < 0 ? NO_MATCH : first + offset;
+	}
+
+	/**
+	 * Validates a TOTP value once: a value matching a time step already accepted for user, or an earlier one, is rejected.
+	 * @param user user the value belongs to
+	 * @param code TOTP value sent by the prover
+	 * @param now Unix time of the verifier
+	 * @param replayCache accepted time steps, whose skew window is used
+	 * @return true if the value matches and had not been accepted before
+	 */
+	public <U> boolean verify(U user, int code, long now, ReplayCache<U> replayCache) {
+		long step = verify(code, now, replayCache.getSkewSteps());
+		return step != NO_MATCH && replayCache.accept(user, step, timeSteps(now));
+	}
+
+	/**
+	 * Generates a TOTP value, sharing it through cache with other requests for the same secret and time step.
+	 * @param now Unix time for the TOTP
+	 * @param secretId identifier of the bound secret in cache
+	 * @param cache recent values
+	 */
+	public <U> int generate(long now, U secretId, TOTPCache<U> cache) {
+		long T = timeSteps(now);
+		return cache.get(secretId, this, T, T);
+	}
+
+	/**
+	 * Validates a TOTP value like verify(code, now, skewSteps), taking the values of the cache's skew window from cache.
+	 * @param code TOTP value sent by the prover
+	 * @param now Unix time of the verifier
+	 * @param secretId identifier of the bound secret in cache
+	 * @param cache recent values
+	 * @return the matching time step, or NO_MATCH
+	 */
+	public <U> long verify(int code, long now, U secretId, TOTPCache<U> cache) {
+		long T = timeSteps(now);
+		long first = Math.max(0, T - cache.getSkewSteps());
+		long last = T + cache.getSkewSteps();
+		int match = -1;
+		for (long step = first; step <= last; step++) {
+			match = HOTP.firstMatch(match, (int) (step - first), cache.get(secretId, this, step, T) ^ code);
+		}
+		return match < 0 ? NO_MATCH : first + match;
+	}
+
+	/** @return the TOTP value of time step T */
+	int generateAt(long T) {
+		return hotp.generate(T, Digit);
+	}
+
+	/** @return T, the number of time steps between T0 and now */
+	private long timeSteps(long now) {
+		return (now - T0) / X;
+	}
 
 	/**
 	 * Generates a TOTP value.
@@ -38,8 +168,40 @@ public class TOTP {
 	 */
 	static int TOTP(byte[] K, int Digit, long T0, long X, HOTP.HashAlgorithm algorithm, long now) {
 		long timeSteps = (now - T0) / X;
-		byte[] T = Bytes.convertLongToBytes(timeSteps);
-		return HOTP.HOTP(K, T, Digit, algorithm);
+		return HOTP.HOTP(K, timeSteps, Digit, algorithm);
+	}
+
+	/**
+	 * Validates a 6-digit TOTP value with the default system parameters.
+	 * @param K shared secret
+	 * @param code TOTP value sent by the prover
+	 * @param now Unix time of the verifier
+	 * @param skewSteps number of time steps the prover may be behind or ahead
+	 * @return the matching time step, or NO_MATCH
+	 */
+	public static long verify(byte[] K, int code, long now, int skewSteps) {
+		return verify(K, code, now, skewSteps, DEFAULT_DIGITS, DEFAULT_START_TIME, DEFAULT_TIME_STEP, HOTP.HashAlgorithm.SHA1);
+	}
+
+	/**
+	 * Validates a TOTP value against the time steps within skewSteps of the current one.
+	 * The key is set up once for the whole window.
+	 * @param K shared secret
+	 * @param code TOTP value sent by the prover
+	 * @param now Unix time of the verifier
+	 * @param skewSteps number of time steps the prover may be behind or ahead
+	 * @param Digit TOTP length
+	 * @param T0 "the Unix time to start counting time steps" (page 4)
+	 * @param X "the time step in seconds" (page 4)
+	 * @param algorithm HMAC algorithm
+	 * @return the matching time step, or NO_MATCH
+	 */
+	public static long verify(byte[] K, int code, long now, int skewSteps, int Digit, long T0, long X, HOTP.HashAlgorithm algorithm) {
+		assert skewSteps >= 0;
+		long T = (now - T0) / X;
+		long first = Math.max(0, T - skewSteps);
+		int offset = HOTP.verify(K, code, first, (int) (T + skewSteps - first), Digit, algorithm);
+		return offset < 0 ? NO_MATCH : first + offset;
 	}
 
 	/**
@@ -0,0 +1,103 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the TOTP values of recent time steps, so requests for the same user within a time step share one HMAC computation.
+ * Values are kept only for steps within the skew window of the latest time seen.
+ * Expired values are evicted incrementally through an ExpiryQueue, like ReplayCache's entries.
+ * Safe for concurrent use. A value computed concurrently by two threads is the same, so either one may be kept.
+ * The skew window is counted in the steps passed in, so TOTPs sharing a cache should share a time step.
+ * @param <U> secret identifier; each identifier must always be used with the same secret
+ */
+public class TOTPCache<U> {
+	private final ConcurrentHashMap<Key<U>, Integer> values = new ConcurrentHashMap<>();
+	private final ExpiryQueue<Key<U>> expiryQueue = new ExpiryQueue<>(this::evict);
+	/** Number of values remembered, reserved before a value is added. */
+	private final AtomicInteger count = new AtomicInteger();
+	private final int skewSteps;
+	/** Values for up to maximumUsers users, each over their whole skew window. */
+	private final int capacity;
+	/** The latest current time step seen. */
+	private final AtomicLong latestStep = new AtomicLong(Long.MIN_VALUE);
+
+	/** Every parameter a TOTP value depends on, besides the secret. */
+	private record Key<U>(U secretId, long step, int Digit, long T0, long X, HOTP.HashAlgorithm algorithm) {}
+
+	/**
+	 * @param skewSteps number of time steps a value may be behind or ahead of the current one
+	 * @param maximumUsers number of secrets whose values can be remembered at once
+	 */
+	public TOTPCache(int skewSteps, int maximumUsers) {
+		assert skewSteps >= 0;
+		assert maximumUsers > 0;
+		this.skewSteps = skewSteps;
+		this.capacity = (int) Math.min(Integer.MAX_VALUE, (long) maximumUsers * (2 * skewSteps + 1));
+	}
+
+	public int getSkewSteps() {
+		return skewSteps;
+	}
+
+	/** @return the number of values remembered, including expired ones not yet evicted */
+	public int size() {
+		return count.get();
+	}
+
+	/**
+	 * Looks up or computes a TOTP value.
+	 * When the cache is full of unexpired values, or the step is outside the skew window, the value is computed and not remembered.
+	 * @param secretId identifier of totp's secret
+	 * @param totp generator bound to the secret
+	 * @param step time step of the value
+	 * @param currentStep time step of the current time
+	 * @return totp's value at step
+	 */
+	int get(U secretId, TOTP totp, long step, long currentStep) {
+		latestStep.accumulateAndGet(currentStep, Math::max);
+		expiryQueue.sweepIncrementally(horizon());
+		Key<U> key = new Key<>(secretId, step, totp.getDigit(), totp.getT0(), totp.getX(), totp.getAlgorithm());
+		Integer value = values.get(key);
+		if (value != null) {
+			return value;
+		}
+		int computed = totp.generateAt(step);
+		if (Math.abs(step - latestStep.get()) <= skewSteps && reserve()) {
+			if (values.putIfAbsent(key, computed) == null) {
+				expiryQueue.add(key, step);
+			} else {
+				count.decrementAndGet();
+			}
+		}
+		return computed;
+	}
+
+	/** @return the earliest step that has not expired */
+	private long horizon() {
+		return latestStep.get() - skewSteps;
+	}
+
+	/** @return whether a value could be counted without exceeding capacity, evicting expired values on demand if the cache is full */
+	private boolean reserve() {
+		while (true) {
+			int current = count.get();
+			if (current >= capacity) {
+				if (expiryQueue.sweep(horizon(), Integer.MAX_VALUE, 1) == 0) {
+					return false;
+				}
+			} else if (count.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private boolean evict(Key<U> key, long step) {
+		if (values.remove(key) != null) {
+			count.decrementAndGet();
+			return true;
+		}
+		return false;
+	}
+}
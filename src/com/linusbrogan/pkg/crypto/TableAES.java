@@ -0,0 +1,372 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Table-driven AES engine.
+ * The State is held as four big-endian column words and each round combines SubBytes, ShiftRows, and MixColumns into four 32-bit table lookups per column, as described in Sec. 5.2.1 of the Rijndael proposal.
+ * Decryption uses the Equivalent Inverse Cipher (Sec. 5.3.5), so its key schedule has InvMixColumns applied to the inner round keys.
+ */
+final class TableAES {
+	private static final int BYTE_MASK = 0xff;
+	/** Words per round key, which equals Nb. */
+	private static final int ROUND_KEY_WORDS = 4;
+	/** Blocks processed together by the multi-block methods, so that their independent table lookups overlap in the pipeline. */
+	static final int LANES = 4;
+	private static final int STRIDE = LANES * AES.BLOCK_SIZE;
+	private static final long WORD_MASK = 0xffffffffL;
+
+	/** S-box as unsigned values. */
+	private static final int[] S = new int[256];
+	/** Inverse S-box as unsigned values. */
+	private static final int[] INV_S = new int[256];
+	/** SubBytes and MixColumns of a State byte in row 0, 1, 2, or 3. */
+	private static final int[] TE0 = new int[256];
+	private static final int[] TE1 = new int[256];
+	private static final int[] TE2 = new int[256];
+	private static final int[] TE3 = new int[256];
+	/** InvSubBytes and InvMixColumns of a State byte in row 0, 1, 2, or 3. */
+	private static final int[] TD0 = new int[256];
+	private static final int[] TD1 = new int[256];
+	private static final int[] TD2 = new int[256];
+	private static final int[] TD3 = new int[256];
+	/** Round constant words (Sec. 5.2), indexed from 1. */
+	private static final int[] RCON = new int[11];
+
+	static {
+		for (int x = 0; x < 256; x++) {
+			byte s = AES.S_BOX[x];
+			S[x] = s & BYTE_MASK;
+			int te = word(AES.mult((byte) 2, s), s, s, AES.mult((byte) 3, s));
+			TE0[x] = te;
+			TE1[x] = Integer.rotateRight(te, 8);
+			TE2[x] = Integer.rotateRight(te, 16);
+			TE3[x] = Integer.rotateRight(te, 24);
+
+			byte i = AES.INV_S_BOX[x];
+			INV_S[x] = i & BYTE_MASK;
+			int td = word(AES.mult((byte) 0xe, i), AES.mult((byte) 0x9, i), AES.mult((byte) 0xd, i), AES.mult((byte) 0xb, i));
+			TD0[x] = td;
+			TD1[x] = Integer.rotateRight(td, 8);
+			TD2[x] = Integer.rotateRight(td, 16);
+			TD3[x] = Integer.rotateRight(td, 24);
+		}
+
+		byte x = 1;
+		for (int i = 1; i < RCON.length; i++) {
+			RCON[i] = (x & BYTE_MASK) << 24;
+			x = AES.xtime(x);
+		}
+	}
+
+	private TableAES() {}
+
+	private static int word(byte b0, byte b1, byte b2, byte b3) {
+		return (b0 & BYTE_MASK) << 24 | (b1 & BYTE_MASK) << 16 | (b2 & BYTE_MASK) << 8 | (b3 & BYTE_MASK);
+	}
+
+	private static int SubWord(int word) {
+		return S[word >>> 24] << 24 | S[(word >>> 16) & BYTE_MASK] << 16 | S[(word >>> 8) & BYTE_MASK] << 8 | S[word & BYTE_MASK];
+	}
+
+	/** InvMixColumns of a single column, computed as InvMixColumns(InvSubBytes(SubBytes(word))). */
+	private static int InvMixColumn(int word) {
+		return TD0[S[word >>> 24]] ^ TD1[S[(word >>> 16) & BYTE_MASK]] ^ TD2[S[(word >>> 8) & BYTE_MASK]] ^ TD3[S[word & BYTE_MASK]];
+	}
+
+	static int load(byte[] b, int off) {
+		return b[off] << 24 | (b[off + 1] & BYTE_MASK) << 16 | (b[off + 2] & BYTE_MASK) << 8 | (b[off + 3] & BYTE_MASK);
+	}
+
+	static void store(int word, byte[] b, int off) {
+		b[off] = (byte) (word >>> 24);
+		b[off + 1] = (byte) (word >>> 16);
+		b[off + 2] = (byte) (word >>> 8);
+		b[off + 3] = (byte) word;
+	}
+
+	/**
+	 * Key Expansion (Sec. 5.2) into one word per int.
+	 * @return Nb * (Nr + 1) round key words
+	 */
+	static int[] expandKey(byte[] key, int Nk, int Nr) {
+		return expandKey(key, Nk, Nr, new int[ROUND_KEY_WORDS * (Nr + 1)]);
+	}
+
+	/**
+	 * Key Expansion (Sec. 5.2) into an existing schedule, overwriting all of it.
+	 * @param w Nb * (Nr + 1) round key words
+	 * @return w
+	 */
+	static int[] expandKey(byte[] key, int Nk, int Nr, int[] w) {
+		assert w.length == ROUND_KEY_WORDS * (Nr + 1);
+		for (int i = 0; i < Nk; i++) {
+			w[i] = load(key, 4 * i);
+		}
+		for (int i = Nk; i < w.length; i++) {
+			int temp = w[i - 1];
+			if (i % Nk == 0) {
+				temp = SubWord(Integer.rotateLeft(temp, 8)) ^ RCON[i / Nk];
+			} else if (Nk > 6 && i % Nk == 4) {
+				temp = SubWord(temp);
+			}
+			w[i] = w[i - Nk] ^ temp;
+		}
+		return w;
+	}
+
+	/**
+	 * Builds the decryption key schedule of the Equivalent Inverse Cipher (Sec. 5.3.5).
+	 * Round keys are stored in the order they are used, so the last round key of w comes first.
+	 */
+	static int[] invertKey(int[] w, int Nr) {
+		return invertKey(w, Nr, new int[w.length]);
+	}
+
+	/** Builds the Equivalent Inverse Cipher key schedule into an existing array the length of w, which must not be w. */
+	static int[] invertKey(int[] w, int Nr, int[] dw) {
+		assert dw.length == w.length && dw != w;
+		for (int round = 0; round <= Nr; round++) {
+			for (int c = 0; c < ROUND_KEY_WORDS; c++) {
+				int word = w[(Nr - round) * ROUND_KEY_WORDS + c];
+				dw[round * ROUND_KEY_WORDS + c] = round == 0 || round == Nr ? word : InvMixColumn(word);
+			}
+		}
+		return dw;
+	}
+
+	/** Cipher (Sec. 5.1) of the block at in[inOff] into out[outOff]. */
+	static void encryptBlock(int[] w, int Nr, byte[] in, int inOff, byte[] out, int outOff) {
+		int s0 = load(in, inOff) ^ w[0];
+		int s1 = load(in, inOff + 4) ^ w[1];
+		int s2 = load(in, inOff + 8) ^ w[2];
+		int s3 = load(in, inOff + 12) ^ w[3];
+		int k = ROUND_KEY_WORDS;
+		for (int round = 1; round < Nr; round++) {
+			int t0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & BYTE_MASK] ^ TE2[(s2 >>> 8) & BYTE_MASK] ^ TE3[s3 & BYTE_MASK] ^ w[k];
+			int t1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & BYTE_MASK] ^ TE2[(s3 >>> 8) & BYTE_MASK] ^ TE3[s0 & BYTE_MASK] ^ w[k + 1];
+			int t2 = TE0[s2 >>> 24] ^ TE1[(s3 >>> 16) & BYTE_MASK] ^ TE2[(s0 >>> 8) & BYTE_MASK] ^ TE3[s1 & BYTE_MASK] ^ w[k + 2];
+			int t3 = TE0[s3 >>> 24] ^ TE1[(s0 >>> 16) & BYTE_MASK] ^ TE2[(s1 >>> 8) & BYTE_MASK] ^ TE3[s2 & BYTE_MASK] ^ w[k + 3];
+			s0 = t0;
+			s1 = t1;
+			s2 = t2;
+			s3 = t3;
+			k += ROUND_KEY_WORDS;
+		}
+		store((S[s0 >>> 24] << 24 | S[(s1 >>> 16) & BYTE_MASK] << 16 | S[(s2 >>> 8) & BYTE_MASK] << 8 | S[s3 & BYTE_MASK]) ^ w[k], out, outOff);
+		store((S[s1 >>> 24] << 24 | S[(s2 >>> 16) & BYTE_MASK] << 16 | S[(s3 >>> 8) & BYTE_MASK] << 8 | S[s0 & BYTE_MASK]) ^ w[k + 1], out, outOff + 4);
+		store((S[s2 >>> 24] << 24 | S[(s3 >>> 16) & BYTE_MASK] << 16 | S[(s0 >>> 8) & BYTE_MASK] << 8 | S[s1 & BYTE_MASK]) ^ w[k + 2], out, outOff + 8);
+		store((S[s3 >>> 24] << 24 | S[(s0 >>> 16) & BYTE_MASK] << 16 | S[(s1 >>> 8) & BYTE_MASK] << 8 | S[s2 & BYTE_MASK]) ^ w[k + 3], out, outOff + 12);
+	}
+
+	/** Equivalent Inverse Cipher (Sec. 5.3.5) of the block at in[inOff] into out[outOff], using a schedule from invertKey. */
+	static void decryptBlock(int[] dw, int Nr, byte[] in, int inOff, byte[] out, int outOff) {
+		int s0 = load(in, inOff) ^ dw[0];
+		int s1 = load(in, inOff + 4) ^ dw[1];
+		int s2 = load(in, inOff + 8) ^ dw[2];
+		int s3 = load(in, inOff + 12) ^ dw[3];
+		int k = ROUND_KEY_WORDS;
+		for (int round = 1; round < Nr; round++) {
+			int t0 = TD0[s0 >>> 24] ^ TD1[(s3 >>> 16) & BYTE_MASK] ^ TD2[(s2 >>> 8) & BYTE_MASK] ^ TD3[s1 & BYTE_MASK] ^ dw[k];
+			int t1 = TD0[s1 >>> 24] ^ TD1[(s0 >>> 16) & BYTE_MASK] ^ TD2[(s3 >>> 8) & BYTE_MASK] ^ TD3[s2 & BYTE_MASK] ^ dw[k + 1];
+			int t2 = TD0[s2 >>> 24] ^ TD1[(s1 >>> 16) & BYTE_MASK] ^ TD2[(s0 >>> 8) & BYTE_MASK] ^ TD3[s3 & BYTE_MASK] ^ dw[k + 2];
+			int t3 = TD0[s3 >>> 24] ^ TD1[(s2 >>> 16) & BYTE_MASK] ^ TD2[(s1 >>> 8) & BYTE_MASK] ^ TD3[s0 & BYTE_MASK] ^ dw[k + 3];
+			s0 = t0;
+			s1 = t1;
+			s2 = t2;
+			s3 = t3;
+			k += ROUND_KEY_WORDS;
+		}
+		store((INV_S[s0 >>> 24] << 24 | INV_S[(s3 >>> 16) & BYTE_MASK] << 16 | INV_S[(s2 >>> 8) & BYTE_MASK] << 8 | INV_S[s1 & BYTE_MASK]) ^ dw[k], out, outOff);
+		store((INV_S[s1 >>> 24] << 24 | INV_S[(s0 >>> 16) & BYTE_MASK] << 16 | INV_S[(s3 >>> 8) & BYTE_MASK] << 8 | INV_S[s2 & BYTE_MASK]) ^ dw[k + 1], out, outOff + 4);
+		store((INV_S[s2 >>> 24] << 24 | INV_S[(s1 >>> 16) & BYTE_MASK] << 16 | INV_S[(s0 >>> 8) & BYTE_MASK] << 8 | INV_S[s3 & BYTE_MASK]) ^ dw[k + 2], out, outOff + 8);
+		store((INV_S[s3 >>> 24] << 24 | INV_S[(s2 >>> 16) & BYTE_MASK] << 16 | INV_S[(s1 >>> 8) & BYTE_MASK] << 8 | INV_S[s0 & BYTE_MASK]) ^ dw[k + 3], out, outOff + 12);
+	}
+
+	/** Cipher (Sec. 5.1) of the block at in[inPos] into out[outPos], reading and writing the buffers directly. */
+	static void encryptBlock(int[] w, int Nr, ByteBuffer in, int inPos, ByteBuffer out, int outPos) {
+		int s0 = Bytes.getInt(in, inPos) ^ w[0];
+		int s1 = Bytes.getInt(in, inPos + 4) ^ w[1];
+		int s2 = Bytes.getInt(in, inPos + 8) ^ w[2];
+		int s3 = Bytes.getInt(in, inPos + 12) ^ w[3];
+		int k = ROUND_KEY_WORDS;
+		for (int r = 1; r < Nr; r++) {
+			int t0 = round(s0, s1, s2, s3, w[k]);
+			int t1 = round(s1, s2, s3, s0, w[k + 1]);
+			int t2 = round(s2, s3, s0, s1, w[k + 2]);
+			int t3 = round(s3, s0, s1, s2, w[k + 3]);
+			s0 = t0;
+			s1 = t1;
+			s2 = t2;
+			s3 = t3;
+			k += ROUND_KEY_WORDS;
+		}
+		Bytes.putInt(out, outPos, finalRound(s0, s1, s2, s3, w[k]));
+		Bytes.putInt(out, outPos + 4, finalRound(s1, s2, s3, s0, w[k + 1]));
+		Bytes.putInt(out, outPos + 8, finalRound(s2, s3, s0, s1, w[k + 2]));
+		Bytes.putInt(out, outPos + 12, finalRound(s3, s0, s1, s2, w[k + 3]));
+	}
+
+	/** Equivalent Inverse Cipher (Sec. 5.3.5) of the block at in[inPos] into out[outPos], reading and writing the buffers directly. */
+	static void decryptBlock(int[] dw, int Nr, ByteBuffer in, int inPos, ByteBuffer out, int outPos) {
+		int s0 = Bytes.getInt(in, inPos) ^ dw[0];
+		int s1 = Bytes.getInt(in, inPos + 4) ^ dw[1];
+		int s2 = Bytes.getInt(in, inPos + 8) ^ dw[2];
+		int s3 = Bytes.getInt(in, inPos + 12) ^ dw[3];
+		int k = ROUND_KEY_WORDS;
+		for (int r = 1; r < Nr; r++) {
+			int t0 = invRound(s0, s3, s2, s1, dw[k]);
+			int t1 = invRound(s1, s0, s3, s2, dw[k + 1]);
+			int t2 = invRound(s2, s1, s0, s3, dw[k + 2]);
+			int t3 = invRound(s3, s2, s1, s0, dw[k + 3]);
+			s0 = t0;
+			s1 = t1;
+			s2 = t2;
+			s3 = t3;
+			k += ROUND_KEY_WORDS;
+		}
+		Bytes.putInt(out, outPos, invFinalRound(s0, s3, s2, s1, dw[k]));
+		Bytes.putInt(out, outPos + 4, invFinalRound(s1, s0, s3, s2, dw[k + 1]));
+		Bytes.putInt(out, outPos + 8, invFinalRound(s2, s1, s0, s3, dw[k + 2]));
+		Bytes.putInt(out, outPos + 12, invFinalRound(s3, s2, s1, s0, dw[k + 3]));
+	}
+
+	/** One column of a full round: SubBytes, ShiftRows, MixColumns, and AddRoundKey. */
+	private static int round(int x0, int x1, int x2, int x3, int k) {
+		return TE0[x0 >>> 24] ^ TE1[(x1 >>> 16) & BYTE_MASK] ^ TE2[(x2 >>> 8) & BYTE_MASK] ^ TE3[x3 & BYTE_MASK] ^ k;
+	}
+
+	/** One column of the final round, which omits MixColumns. */
+	private static int finalRound(int x0, int x1, int x2, int x3, int k) {
+		return (S[x0 >>> 24] << 24 | S[(x1 >>> 16) & BYTE_MASK] << 16 | S[(x2 >>> 8) & BYTE_MASK] << 8 | S[x3 & BYTE_MASK]) ^ k;
+	}
+
+	/**
+	 * CTR mode keystream (NIST SP 800-38A, Sec. 6.5), XORed from in[inOff..] into out[outOff..].
+	 * LANES counter blocks run through the rounds together, and each full block is combined a long at a time.
+	 * @param counterHi first 8 bytes of the initial counter block, big-endian
+	 * @param counterLo last 8 bytes of the initial counter block, big-endian
+	 * @param length number of bytes, which need not be a multiple of the block size
+	 */
+	static void ctr(int[] w, int Nr, long counterHi, long counterLo, byte[] in, int inOff, byte[] out, int outOff, int length) {
+		for (int done = 0; done < length; done += STRIDE) {
+			// The counter block is a 128-bit big-endian integer, so carry from the low half into the high half.
+			long lo0 = counterLo;
+			long hi0 = counterHi;
+			long lo1 = lo0 + 1;
+			long hi1 = lo1 == 0 ? hi0 + 1 : hi0;
+			long lo2 = lo1 + 1;
+			long hi2 = lo2 == 0 ? hi1 + 1 : hi1;
+			long lo3 = lo2 + 1;
+			long hi3 = lo3 == 0 ? hi2 + 1 : hi2;
+			counterLo = lo3 + 1;
+			counterHi = counterLo == 0 ? hi3 + 1 : hi3;
+
+			int a0 = (int) (hi0 >>> 32) ^ w[0], a1 = (int) hi0 ^ w[1], a2 = (int) (lo0 >>> 32) ^ w[2], a3 = (int) lo0 ^ w[3];
+			int b0 = (int) (hi1 >>> 32) ^ w[0], b1 = (int) hi1 ^ w[1], b2 = (int) (lo1 >>> 32) ^ w[2], b3 = (int) lo1 ^ w[3];
+			int c0 = (int) (hi2 >>> 32) ^ w[0], c1 = (int) hi2 ^ w[1], c2 = (int) (lo2 >>> 32) ^ w[2], c3 = (int) lo2 ^ w[3];
+			int d0 = (int) (hi3 >>> 32) ^ w[0], d1 = (int) hi3 ^ w[1], d2 = (int) (lo3 >>> 32) ^ w[2], d3 = (int) lo3 ^ w[3];
+			int k = ROUND_KEY_WORDS;
+			for (int r = 1; r < Nr; r++) {
+				int k0 = w[k], k1 = w[k + 1], k2 = w[k + 2], k3 = w[k + 3];
+				int ta0 = round(a0, a1, a2, a3, k0), ta1 = round(a1, a2, a3, a0, k1), ta2 = round(a2, a3, a0, a1, k2), ta3 = round(a3, a0, a1, a2, k3);
+				int tb0 = round(b0, b1, b2, b3, k0), tb1 = round(b1, b2, b3, b0, k1), tb2 = round(b2, b3, b0, b1, k2), tb3 = round(b3, b0, b1, b2, k3);
+				int tc0 = round(c0, c1, c2, c3, k0), tc1 = round(c1, c2, c3, c0, k1), tc2 = round(c2, c3, c0, c1, k2), tc3 = round(c3, c0, c1, c2, k3);
+				int td0 = round(d0, d1, d2, d3, k0), td1 = round(d1, d2, d3, d0, k1), td2 = round(d2, d3, d0, d1, k2), td3 = round(d3, d0, d1, d2, k3);
+				a0 = ta0; a1 = ta1; a2 = ta2; a3 = ta3;
+				b0 = tb0; b1 = tb1; b2 = tb2; b3 = tb3;
+				c0 = tc0; c1 = tc1; c2 = tc2; c3 = tc3;
+				d0 = td0; d1 = td1; d2 = td2; d3 = td3;
+				k += ROUND_KEY_WORDS;
+			}
+			int k0 = w[k], k1 = w[k + 1], k2 = w[k + 2], k3 = w[k + 3];
+			int remaining = length - done;
+			xorWords(finalRound(a0, a1, a2, a3, k0), finalRound(a1, a2, a3, a0, k1), finalRound(a2, a3, a0, a1, k2), finalRound(a3, a0, a1, a2, k3),
+				in, inOff + done, out, outOff + done, remaining);
+			xorWords(finalRound(b0, b1, b2, b3, k0), finalRound(b1, b2, b3, b0, k1), finalRound(b2, b3, b0, b1, k2), finalRound(b3, b0, b1, b2, k3),
+				in, inOff + done + AES.BLOCK_SIZE, out, outOff + done + AES.BLOCK_SIZE, remaining - AES.BLOCK_SIZE);
+			xorWords(finalRound(c0, c1, c2, c3, k0), finalRound(c1, c2, c3, c0, k1), finalRound(c2, c3, c0, c1, k2), finalRound(c3, c0, c1, c2, k3),
+				in, inOff + done + 2 * AES.BLOCK_SIZE, out, outOff + done + 2 * AES.BLOCK_SIZE, remaining - 2 * AES.BLOCK_SIZE);
+			xorWords(finalRound(d0, d1, d2, d3, k0), finalRound(d1, d2, d3, d0, k1), finalRound(d2, d3, d0, d1, k2), finalRound(d3, d0, d1, d2, k3),
+				in, inOff + done + 3 * AES.BLOCK_SIZE, out, outOff + done + 3 * AES.BLOCK_SIZE, remaining - 3 * AES.BLOCK_SIZE);
+		}
+	}
+
+	/**
+	 * XORs the four words of a block with up to length bytes of in, writing the result to out.
+	 * A full block is combined as two longs; a short one byte by byte, and a non-positive length is ignored.
+	 */
+	private static void xorWords(int k0, int k1, int k2, int k3, byte[] in, int inOff, byte[] out, int outOff, int length) {
+		if (length >= AES.BLOCK_SIZE) {
+			long high = (long) Bytes.BIG_ENDIAN_LONGS.get(in, inOff) ^ ((long) k0 << 32 | (k1 & WORD_MASK));
+			long low = (long) Bytes.BIG_ENDIAN_LONGS.get(in, inOff + 8) ^ ((long) k2 << 32 | (k3 & WORD_MASK));
+			Bytes.BIG_ENDIAN_LONGS.set(out, outOff, high);
+			Bytes.BIG_ENDIAN_LONGS.set(out, outOff + 8, low);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			int word = i < 4 ? k0 : i < 8 ? k1 : i < 12 ? k2 : k3;
+			out[outOff + i] = (byte) (in[inOff + i] ^ (word >>> (24 - 8 * (i % 4))));
+		}
+	}
+
+	/** One column of a full inverse round: InvShiftRows, InvSubBytes, InvMixColumns, and AddRoundKey. */
+	private static int invRound(int x0, int x1, int x2, int x3, int k) {
+		return TD0[x0 >>> 24] ^ TD1[(x1 >>> 16) & BYTE_MASK] ^ TD2[(x2 >>> 8) & BYTE_MASK] ^ TD3[x3 & BYTE_MASK] ^ k;
+	}
+
+	/** One column of the final inverse round, which omits InvMixColumns. */
+	private static int invFinalRound(int x0, int x1, int x2, int x3, int k) {
+		return (INV_S[x0 >>> 24] << 24 | INV_S[(x1 >>> 16) & BYTE_MASK] << 16 | INV_S[(x2 >>> 8) & BYTE_MASK] << 8 | INV_S[x3 & BYTE_MASK]) ^ k;
+	}
+
+	/**
+	 * CBC mode decryption (NIST SP 800-38A, Sec. 6.2) of consecutive blocks, LANES blocks per pass.
+	 * Each block is chained to the block before it in in, so the IV must directly precede the first block.
+	 * @param dw schedule from invertKey
+	 * @param out buffer that must not overlap in
+	 * @param blocks number of ciphertext blocks at in[inOff]
+	 */
+	static void cbcDecrypt(int[] dw, int Nr, byte[] in, int inOff, byte[] out, int outOff, int blocks) {
+		int i = 0;
+		for (; i + LANES <= blocks; i += LANES) {
+			int a = inOff + i * AES.BLOCK_SIZE;
+			int b = a + AES.BLOCK_SIZE;
+			int c = b + AES.BLOCK_SIZE;
+			int d = c + AES.BLOCK_SIZE;
+			int a0 = load(in, a) ^ dw[0], a1 = load(in, a + 4) ^ dw[1], a2 = load(in, a + 8) ^ dw[2], a3 = load(in, a + 12) ^ dw[3];
+			int b0 = load(in, b) ^ dw[0], b1 = load(in, b + 4) ^ dw[1], b2 = load(in, b + 8) ^ dw[2], b3 = load(in, b + 12) ^ dw[3];
+			int c0 = load(in, c) ^ dw[0], c1 = load(in, c + 4) ^ dw[1], c2 = load(in, c + 8) ^ dw[2], c3 = load(in, c + 12) ^ dw[3];
+			int d0 = load(in, d) ^ dw[0], d1 = load(in, d + 4) ^ dw[1], d2 = load(in, d + 8) ^ dw[2], d3 = load(in, d + 12) ^ dw[3];
+			int k = ROUND_KEY_WORDS;
+			for (int r = 1; r < Nr; r++) {
+				int k0 = dw[k], k1 = dw[k + 1], k2 = dw[k + 2], k3 = dw[k + 3];
+				int ta0 = invRound(a0, a3, a2, a1, k0), ta1 = invRound(a1, a0, a3, a2, k1), ta2 = invRound(a2, a1, a0, a3, k2), ta3 = invRound(a3, a2, a1, a0, k3);
+				int tb0 = invRound(b0, b3, b2, b1, k0), tb1 = invRound(b1, b0, b3, b2, k1), tb2 = invRound(b2, b1, b0, b3, k2), tb3 = invRound(b3, b2, b1, b0, k3);
+				int tc0 = invRound(c0, c3, c2, c1, k0), tc1 = invRound(c1, c0, c3, c2, k1), tc2 = invRound(c2, c1, c0, c3, k2), tc3 = invRound(c3, c2, c1, c0, k3);
+				int td0 = invRound(d0, d3, d2, d1, k0), td1 = invRound(d1, d0, d3, d2, k1), td2 = invRound(d2, d1, d0, d3, k2), td3 = invRound(d3, d2, d1, d0, k3);
+				a0 = ta0; a1 = ta1; a2 = ta2; a3 = ta3;
+				b0 = tb0; b1 = tb1; b2 = tb2; b3 = tb3;
+				c0 = tc0; c1 = tc1; c2 = tc2; c3 = tc3;
+				d0 = td0; d1 = td1; d2 = td2; d3 = td3;
+				k += ROUND_KEY_WORDS;
+			}
+			int k0 = dw[k], k1 = dw[k + 1], k2 = dw[k + 2], k3 = dw[k + 3];
+			int o = outOff + i * AES.BLOCK_SIZE;
+			xorWords(invFinalRound(a0, a3, a2, a1, k0), invFinalRound(a1, a0, a3, a2, k1), invFinalRound(a2, a1, a0, a3, k2), invFinalRound(a3, a2, a1, a0, k3),
+				in, a - AES.BLOCK_SIZE, out, o, AES.BLOCK_SIZE);
+			xorWords(invFinalRound(b0, b3, b2, b1, k0), invFinalRound(b1, b0, b3, b2, k1), invFinalRound(b2, b1, b0, b3, k2), invFinalRound(b3, b2, b1, b0, k3),
+				in, a, out, o + AES.BLOCK_SIZE, AES.BLOCK_SIZE);
+			xorWords(invFinalRound(c0, c3, c2, c1, k0), invFinalRound(c1, c0, c3, c2, k1), invFinalRound(c2, c1, c0, c3, k2), invFinalRound(c3, c2, c1, c0, k3),
+				in, b, out, o + 2 * AES.BLOCK_SIZE, AES.BLOCK_SIZE);
+			xorWords(invFinalRound(d0, d3, d2, d1, k0), invFinalRound(d1, d0, d3, d2, k1), invFinalRound(d2, d1, d0, d3, k2), invFinalRound(d3, d2, d1, d0, k3),
+				in, c, out, o + 3 * AES.BLOCK_SIZE, AES.BLOCK_SIZE);
+		}
+		for (; i < blocks; i++) {
+			int block = inOff + i * AES.BLOCK_SIZE;
+			int o = outOff + i * AES.BLOCK_SIZE;
+			decryptBlock(dw, Nr, in, block, out, o);
+			Bytes.xorInto(out, o, in, block - AES.BLOCK_SIZE, out, o, AES.BLOCK_SIZE);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AESKeyCacheTest {
+	@Test
+	void sharesSchedulesOfEqualKeys() {
+		AESKeyCache cache = new AESKeyCache(10, AES.Engine.TABLE);
+		byte[] key = Bytes.convertHexToBytes("000102030405060708090a0b0c0d0e0f");
+		AES aes = cache.get(key);
+		assertSame(aes, cache.get(key.clone()));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.size());
+
+		// The cache keeps its own copy of the key.
+		key[0] ^= 1;
+		assertNotSame(aes, cache.get(key));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	void matchesUncachedCipherForEachEngine() {
+		Random random = new Random(22);
+		byte[] block = new byte[AES.BLOCK_SIZE];
+		random.nextBytes(block);
+		for (AES.Engine engine : AES.Engine.values()) {
+			AESKeyCache cache = new AESKeyCache(4, engine);
+			for (int keyLength : new int[]{16, 24, 32}) {
+				byte[] key = new byte[keyLength];
+				random.nextBytes(key);
+				assertArrayEquals(new AES(key, engine).encrypt(block), cache.get(key).encrypt(block));
+				assertArrayEquals(block, cache.get(key).decrypt(cache.get(key).encrypt(block)));
+			}
+		}
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedWithoutBreakingHeldInstances() {
+		AESKeyCache cache = new AESKeyCache(2, AES.Engine.TABLE, 1);
+		byte[] a = new byte[16];
+		byte[] b = new byte[16];
+		byte[] c = new byte[16];
+		a[0] = 1;
+		b[0] = 2;
+		c[0] = 3;
+		byte[] block = new byte[AES.BLOCK_SIZE];
+		AES aesA = cache.get(a);
+		AES aesB = cache.get(b);
+		cache.get(a);
+		cache.get(c);
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2, cache.size());
+		assertSame(aesA, cache.get(a));
+		// A caller still holding the evicted instance keeps getting correct results.
+		assertArrayEquals(new AES(b).encrypt(block), aesB.encrypt(block));
+		assertArrayEquals(new AES(a).encrypt(block), aesA.encrypt(block));
+		assertNotSame(aesB, cache.get(b));
+		assertEquals(2, cache.getEvictions());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertArrayEquals(new AES(a).encrypt(block), aesA.encrypt(block));
+	}
+
+	@Test
+	void staysBoundedAcrossThreads() throws InterruptedException {
+		int maximumKeys = 100;
+		AESKeyCache cache = new AESKeyCache(maximumKeys, AES.Engine.TABLE, 8);
+		byte[] block = new byte[AES.BLOCK_SIZE];
+		Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				byte[] key = new byte[16];
+				for (int i = 0; i < 10_000; i++) {
+					Bytes.BIG_ENDIAN_INTS.set(key, 0, i % 500);
+					AES aes = cache.get(key);
+					// Other threads evict keys all the time, so the instance must stay usable.
+					if (!Arrays.equals(new AES(key).encrypt(block), aes.encrypt(block))) {
+						failures.add(new AssertionError("wrong ciphertext for key " + i % 500));
+					}
+				}
+			});
+			threads[t].setUncaughtExceptionHandler((thread, e) -> failures.add(e));
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (Throwable failure : failures) {
+			fail(failure);
+		}
+		assertTrue(cache.size() <= maximumKeys);
+		assertEquals(4 * 10_000, cache.getHits() + cache.getMisses());
+		// Concurrent misses on one key insert it once, so some misses neither add nor evict.
+		assertTrue(cache.getEvictions() <= cache.getMisses() - cache.size());
+	}
+}
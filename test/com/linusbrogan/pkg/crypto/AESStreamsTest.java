@@ -0,0 +1,126 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AESStreamsTest {
+	private static final byte[] KEY = Bytes.convertHexToBytes("2b7e151628aed2a6abf7158809cf4f3c");
+	private static final byte[] IV = Bytes.convertHexToBytes("3243f6a8885a308d313198a2e0370734");
+	private static final AES_CBC CBC = new AES_CBC(KEY);
+	private static final AES_CTR CTR = new AES_CTR(KEY);
+	private static final AES_GCM GCM = new AES_GCM(KEY);
+	private static final byte[] GCM_IV = Arrays.copyOf(IV, AES_GCM.IV_LENGTH);
+	private static final byte[] MESSAGE = new byte[20000];
+
+	static {
+		for (int i = 0; i < MESSAGE.length; i++) {
+			MESSAGE[i] = (byte) (i * 13 + (i >>> 8));
+		}
+	}
+
+	@Test
+	void outputStreamMatchesEncrypt() throws IOException {
+		assertArrayEquals(CBC.encrypt(IV, MESSAGE), writeToStream(CBC.newIncrementalCipher(), IV));
+		assertArrayEquals(CTR.encrypt(IV, MESSAGE), writeToStream(CTR.newIncrementalCipher(), IV));
+	}
+
+	@Test
+	void inputStreamMatchesDecrypt() throws IOException {
+		assertArrayEquals(MESSAGE, readFromStream(CBC.encrypt(IV, MESSAGE), CBC.newIncrementalCipher()));
+		assertArrayEquals(MESSAGE, readFromStream(CTR.encrypt(IV, MESSAGE), CTR.newIncrementalCipher()));
+	}
+
+	@Test
+	void streamsUseTheGCMIVLengthAndTag() throws IOException {
+		byte[] ciphertext = GCM.encrypt(GCM_IV, new byte[0], MESSAGE);
+		assertArrayEquals(ciphertext, writeToStream(GCM.newIncrementalCipher(), GCM_IV));
+		assertArrayEquals(MESSAGE, readFromStream(ciphertext, GCM.newIncrementalCipher()));
+
+		ciphertext[ciphertext.length / 2] ^= 1;
+		assertThrows(SecurityException.class, () -> readFromStream(ciphertext, GCM.newIncrementalCipher()));
+	}
+
+	@Test
+	void writableChannelRejectsNonBlockingChannels() throws IOException {
+		Pipe pipe = Pipe.open();
+		try {
+			pipe.sink().configureBlocking(false);
+			assertThrows(IllegalBlockingModeException.class, () -> new AESWritableChannel(pipe.sink(), CTR.newIncrementalCipher(), IV));
+		} finally {
+			pipe.sink().close();
+			pipe.source().close();
+		}
+	}
+
+	@Test
+	void inputStreamFailsWithoutIV() {
+		InputStream in = new AESInputStream(new ByteArrayInputStream(new byte[3]), CTR.newIncrementalCipher());
+		assertThrows(IOException.class, in::read);
+	}
+
+	@Test
+	void channelsRoundTrip() throws IOException {
+		IncrementalCipher[] ciphers = {CBC.newIncrementalCipher(), CTR.newIncrementalCipher()};
+		byte[][] expected = {CBC.encrypt(IV, MESSAGE), CTR.encrypt(IV, MESSAGE)};
+		for (int i = 0; i < ciphers.length; i++) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (WritableByteChannel channel = new AESWritableChannel(Channels.newChannel(bytes), ciphers[i], IV)) {
+				ByteBuffer src = ByteBuffer.allocateDirect(MESSAGE.length);
+				src.put(MESSAGE).flip();
+				for (int limit = 777; src.position() < MESSAGE.length; limit += 777) {
+					src.limit(Math.min(limit, MESSAGE.length));
+					channel.write(src);
+				}
+			}
+			assertArrayEquals(expected[i], bytes.toByteArray());
+
+			ByteBuffer dst = ByteBuffer.allocate(MESSAGE.length + 1);
+			try (ReadableByteChannel channel = new AESReadableChannel(Channels.newChannel(new ByteArrayInputStream(expected[i])), ciphers[i])) {
+				while (channel.read(dst) >= 0) {
+					// Keep reading until the end of the message.
+				}
+			}
+			dst.flip();
+			byte[] message = new byte[dst.remaining()];
+			dst.get(message);
+			assertArrayEquals(MESSAGE, message);
+		}
+	}
+
+	private static byte[] writeToStream(IncrementalCipher cipher, byte[] iv) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new AESOutputStream(bytes, cipher, iv)) {
+			out.write(MESSAGE[0]);
+			for (int offset = 1; offset < MESSAGE.length; offset += 1000) {
+				out.write(MESSAGE, offset, Math.min(1000, MESSAGE.length - offset));
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] readFromStream(byte[] ciphertext, IncrementalCipher cipher) throws IOException {
+		try (InputStream in = new AESInputStream(new ByteArrayInputStream(ciphertext), cipher)) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			bytes.write(in.read());
+			byte[] buffer = new byte[333];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				bytes.write(buffer, 0, n);
+			}
+			return bytes.toByteArray();
+		}
+	}
+}
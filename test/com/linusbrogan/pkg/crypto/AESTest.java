@@ -2,7 +2,10 @@ package com.linusbrogan.pkg.crypto;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -136,6 +139,105 @@ class AESTest {
 		assertArrayEquals(CIPHER_INPUT, aes.decrypt(CIPHER_OUTPUT));
 	}
 
+	// Example Vectors (App. C)
+	private static final byte[] EXAMPLE_PLAINTEXT = Bytes.convertHexToBytes("00112233445566778899aabbccddeeff");
+	private static final byte[][] EXAMPLE_KEYS = {
+		Bytes.convertHexToBytes("000102030405060708090a0b0c0d0e0f"),
+		Bytes.convertHexToBytes("000102030405060708090a0b0c0d0e0f1011121314151617"),
+		Bytes.convertHexToBytes("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f")
+	};
+	private static final byte[][] EXAMPLE_CIPHERTEXTS = {
+		Bytes.convertHexToBytes("69c4e0d86a7b0430d8cdb78070b4c55a"),
+		Bytes.convertHexToBytes("dda97ca4864cdfe06eaf70a0ec0d7191"),
+		Bytes.convertHexToBytes("8ea2b7ca516745bfeafc49904b496089")
+	};
+
+	@Test
+	void encryptsExampleVectorsWithEachEngine() {
+		for (AES.Engine engine : AES.Engine.values()) {
+			for (int i = 0; i < EXAMPLE_KEYS.length; i++) {
+				AES aes = new AES(EXAMPLE_KEYS[i], engine);
+				assertArrayEquals(EXAMPLE_CIPHERTEXTS[i], aes.encrypt(EXAMPLE_PLAINTEXT), engine + " " + i);
+			}
+		}
+	}
+
+	@Test
+	void decryptsExampleVectorsWithEachEngine() {
+		for (AES.Engine engine : AES.Engine.values()) {
+			for (int i = 0; i < EXAMPLE_KEYS.length; i++) {
+				AES aes = new AES(EXAMPLE_KEYS[i], engine);
+				assertArrayEquals(EXAMPLE_PLAINTEXT, aes.decrypt(EXAMPLE_CIPHERTEXTS[i]), engine + " " + i);
+			}
+		}
+	}
+
+	@Test
+	void encryptsAndDecryptsBlocksInPlaceAtOffsets() {
+		int offset = 5;
+		for (AES.Engine engine : AES.Engine.values()) {
+			AES aes = new AES(CIPHER_KEY, engine);
+			byte[] buffer = new byte[offset + AES.BLOCK_SIZE + 3];
+			System.arraycopy(CIPHER_INPUT, 0, buffer, offset, AES.BLOCK_SIZE);
+			aes.encryptBlock(buffer, offset, buffer, offset);
+			assertArrayEquals(CIPHER_OUTPUT, Arrays.copyOfRange(buffer, offset, offset + AES.BLOCK_SIZE), engine.toString());
+			aes.decryptBlock(buffer, offset, buffer, offset);
+			assertArrayEquals(CIPHER_INPUT, Arrays.copyOfRange(buffer, offset, offset + AES.BLOCK_SIZE), engine.toString());
+		}
+	}
+
+	@Test
+	void bitslicedEngineMatchesTableEngineOnRandomBlocks() {
+		Random random = new Random(197);
+		for (int keyLength : new int[] {16, 24, 32}) {
+			byte[] key = new byte[keyLength];
+			random.nextBytes(key);
+			AES table = new AES(key, AES.Engine.TABLE);
+			AES bitsliced = new AES(key, AES.Engine.BITSLICED);
+			for (int i = 0; i < 100; i++) {
+				byte[] block = new byte[AES.BLOCK_SIZE];
+				random.nextBytes(block);
+				byte[] ciphertext = table.encrypt(block);
+				assertArrayEquals(ciphertext, bitsliced.encrypt(block));
+				assertArrayEquals(block, bitsliced.decrypt(ciphertext));
+			}
+		}
+	}
+
+	@Test
+	void rekeyedInstancesMatchNewInstances() {
+		Random random = new Random(23);
+		for (AES.Engine engine : AES.Engine.values()) {
+			for (int keyLength : new int[] {16, 24, 32}) {
+				byte[] key = new byte[keyLength];
+				random.nextBytes(key);
+				AES aes = new AES(key, engine);
+				for (int i = 0; i < 3; i++) {
+					random.nextBytes(key);
+					aes.rekey(key);
+					byte[] block = new byte[AES.BLOCK_SIZE];
+					random.nextBytes(block);
+					byte[] ciphertext = new AES(key, engine).encrypt(block);
+					assertArrayEquals(ciphertext, aes.encrypt(block), engine + " " + keyLength);
+					assertArrayEquals(block, aes.decrypt(ciphertext), engine + " " + keyLength);
+				}
+			}
+		}
+	}
+
+	@Test
+	void expandsKeysIntoWords() {
+		byte[][] keys = {CIPHER_KEY_128b, CIPHER_KEY_192b, CIPHER_KEY_256b};
+		byte[][][] schedules = {w_128b, w_192b, w_256b};
+		for (int i = 0; i < keys.length; i++) {
+			int[] words = TableAES.expandKey(keys[i], keys[i].length / 4, schedules[i].length / 4 - 1);
+			assertEquals(schedules[i].length, words.length);
+			for (int j = 0; j < words.length; j++) {
+				assertEquals(TableAES.load(schedules[i][j], 0), words[j]);
+			}
+		}
+	}
+
 	@Test
 	void inverseSubstitutesBytes() {
 		int step = 0;
@@ -171,4 +273,30 @@ class AESTest {
 			assertEquals(modes[i], AES.selectModeForKey(keys[i].length));
 		}
 	}
+
+	@Test
+	void encryptsAndDecryptsDirectBuffersOfEitherOrder() {
+		for (AES.Engine engine : AES.Engine.values()) {
+			AES aes = new AES(CIPHER_KEY, engine);
+			for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+				ByteBuffer in = ByteBuffer.allocateDirect(AES.BLOCK_SIZE).order(order);
+				in.put(CIPHER_INPUT).flip();
+				ByteBuffer out = ByteBuffer.allocateDirect(AES.BLOCK_SIZE + 1).order(order);
+				out.put((byte) 0);
+				aes.encryptBlock(in, out);
+				assertEquals(0, in.remaining());
+				assertEquals(0, out.remaining());
+				byte[] ciphertext = new byte[AES.BLOCK_SIZE];
+				out.get(1, ciphertext);
+				assertArrayEquals(CIPHER_OUTPUT, ciphertext, engine + " " + order);
+
+				out.position(1);
+				ByteBuffer plaintext = ByteBuffer.allocateDirect(AES.BLOCK_SIZE).order(order);
+				aes.decryptBlock(out, plaintext);
+				byte[] message = new byte[AES.BLOCK_SIZE];
+				plaintext.get(0, message);
+				assertArrayEquals(CIPHER_INPUT, message, engine + " " + order);
+			}
+		}
+	}
 }
@@ -2,6 +2,10 @@ package com.linusbrogan.pkg.crypto;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class AES_CBCTest {
@@ -44,4 +48,86 @@ class AES_CBCTest {
 	void decryptsEmptyMessage() {
 		assertArrayEquals(M2, CBC.decrypt(C2));
 	}
+
+	@Test
+	void decryptsWithEachEngineAcrossLengths() {
+		for (AES.Engine engine : AES.Engine.values()) {
+			AES_CBC cbc = new AES_CBC(new AES(KEY, engine));
+			for (int length = 0; length <= 150; length++) {
+				byte[] message = new byte[length];
+				for (int i = 0; i < length; i++) {
+					message[i] = (byte) (i * 7 + length);
+				}
+				assertArrayEquals(message, cbc.decrypt(CBC.encrypt(IV, message)), engine + " length " + length);
+			}
+		}
+	}
+
+	@Test
+	void parallelDecryptionMatchesSequential() {
+		byte[] message = new byte[AES_CBC.PARALLEL_THRESHOLD + 3 * AES_CBC.CHUNK_BLOCKS * AES.BLOCK_SIZE + 37];
+		for (int i = 0; i < message.length; i++) {
+			message[i] = (byte) (i ^ (i >>> 11));
+		}
+		byte[] ciphertext = CBC.encrypt(IV, message);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertArrayEquals(message, CBC.decryptParallel(ciphertext, pool));
+			assertArrayEquals(M0, CBC.decryptParallel(C0));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void processesIncrementallyInChunksOfAnySize() {
+		byte[] message = new byte[1000];
+		for (int i = 0; i < message.length; i++) {
+			message[i] = (byte) (i * 31);
+		}
+		byte[] ciphertext = CBC.encrypt(IV, message);
+		byte[] body = Arrays.copyOfRange(ciphertext, AES.BLOCK_SIZE, ciphertext.length);
+		IncrementalCiphers.assertProcessesInChunksOfAnySize(CBC.newIncrementalCipher(), IV, message, body);
+	}
+
+	@Test
+	void holdsBackTheFinalBlockUntilDoFinal() {
+		byte[][] messages = {M0, M1, M2};
+		byte[][] ciphertexts = {C0, C1, C2};
+		IncrementalCipher cipher = CBC.newIncrementalCipher();
+		for (int i = 0; i < messages.length; i++) {
+			byte[] body = Arrays.copyOfRange(ciphertexts[i], AES.BLOCK_SIZE, ciphertexts[i].length);
+			byte[] out = new byte[cipher.getOutputSize(body.length)];
+			cipher.init(false, IV);
+			// The last block holds the pad, so it is only decrypted once no more input can follow.
+			int written = cipher.update(body, 0, body.length, out, 0);
+			assertEquals(body.length - AES.BLOCK_SIZE, written, "message " + i);
+			assertEquals(0, cipher.update(body, 0, 0, out, written), "message " + i);
+			written += cipher.doFinal(out, written);
+			assertArrayEquals(messages[i], Arrays.copyOf(out, written), "message " + i);
+		}
+	}
+
+	@Test
+	void processesDirectBuffers() {
+		byte[][] messages = {M0, M1, M2};
+		byte[][] ciphertexts = {C0, C1, C2};
+		for (int i = 0; i < messages.length; i++) {
+			ByteBuffer message = ByteBuffer.allocateDirect(messages[i].length);
+			message.put(messages[i]).flip();
+			ByteBuffer ciphertext = ByteBuffer.allocateDirect(ciphertexts[i].length);
+			CBC.encrypt(IV, message, ciphertext);
+			assertFalse(ciphertext.hasRemaining());
+			byte[] actual = new byte[ciphertexts[i].length];
+			ciphertext.flip().get(actual);
+			assertArrayEquals(ciphertexts[i], actual);
+
+			ciphertext.flip();
+			ByteBuffer plaintext = ByteBuffer.allocateDirect(ciphertexts[i].length - AES.BLOCK_SIZE);
+			CBC.decrypt(ciphertext, plaintext);
+			byte[] decrypted = new byte[plaintext.flip().remaining()];
+			plaintext.get(decrypted);
+			assertArrayEquals(messages[i], decrypted);
+		}
+	}
 }
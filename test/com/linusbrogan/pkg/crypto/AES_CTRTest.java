@@ -1,8 +1,14 @@
 package com.linusbrogan.pkg.crypto;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -47,6 +53,69 @@ class AES_CTRTest {
 		assertArrayEquals(M2, CTR.decrypt(C2));
 	}
 
+	@Test
+	void matchesReferenceEngineAcrossLengthsAndCarries() {
+		AES_CTR reference = new AES_CTR(new AES(KEY, AES.Engine.REFERENCE));
+		AES_CTR bitsliced = new AES_CTR(new AES(KEY, AES.Engine.BITSLICED));
+		byte[][] ivs = {IV, Bytes.convertHexToBytes("00000000000000fffffffffffffffffd"), Bytes.convertHexToBytes("fffffffffffffffffffffffffffffffe")};
+		for (byte[] iv : ivs) {
+			for (int length = 0; length <= 150; length++) {
+				byte[] message = new byte[length];
+				for (int i = 0; i < length; i++) {
+					message[i] = (byte) (i * 7 + length);
+				}
+				byte[] ciphertext = reference.encrypt(iv, message);
+				assertArrayEquals(ciphertext, CTR.encrypt(iv, message), "length " + length);
+				assertArrayEquals(message, CTR.decrypt(ciphertext), "length " + length);
+				assertArrayEquals(ciphertext, bitsliced.encrypt(iv, message), "bitsliced length " + length);
+			}
+		}
+	}
+
+	@Test
+	void parallelMatchesSequential() {
+		byte[] iv = Bytes.convertHexToBytes("0102030405060708ffffffffffff0000");
+		byte[] message = new byte[AES_CTR.PARALLEL_THRESHOLD + 3 * AES_CTR.CHUNK_SIZE + 37];
+		for (int i = 0; i < message.length; i++) {
+			message[i] = (byte) (i ^ (i >>> 11));
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			byte[] ciphertext = CTR.encrypt(iv, message);
+			assertArrayEquals(ciphertext, CTR.encryptParallel(iv, message, pool));
+			assertArrayEquals(message, CTR.decryptParallel(ciphertext, pool));
+			assertArrayEquals(C0, CTR.encryptParallel(IV, M0));
+			assertArrayEquals(M0, CTR.decryptParallel(C0));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void decryptsRanges() {
+		byte[] message = new byte[200];
+		for (int i = 0; i < message.length; i++) {
+			message[i] = (byte) (i * 3 + 1);
+		}
+		byte[] iv = Bytes.convertHexToBytes("0000000000000000fffffffffffffffa");
+		byte[] ciphertext = CTR.encrypt(iv, message);
+		for (int offset = 0; offset <= message.length; offset += 7) {
+			for (int length = 0; offset + length <= message.length; length += 11) {
+				assertArrayEquals(Arrays.copyOfRange(message, offset, offset + length), CTR.decryptRange(ciphertext, offset, length), offset + " " + length);
+			}
+		}
+	}
+
+	@Test
+	void addsToBlockPurely() {
+		byte[] before = Bytes.convertHexToBytes("2b7e151628aed2a6fffffffffffffff0");
+		byte[] beforeCopy = Arrays.copyOf(before, before.length);
+		byte[] after = Bytes.convertHexToBytes("2b7e151628aed2a70000000000000010");
+		assertArrayEquals(after, AES_CTR.addToBlock(before, 0x20));
+		assertArrayEquals(beforeCopy, before);
+		assertArrayEquals(new byte[AES.BLOCK_SIZE], AES_CTR.addToBlock(Bytes.convertHexToBytes("ffffffffffffffffffffffffffffffff"), 1));
+	}
+
 	@Test
 	void incrementsBlockPurely() {
 		byte[] before = Bytes.convertHexToBytes("2b7e151628aed2a6abf7158809cfffff");
@@ -55,4 +124,82 @@ class AES_CTRTest {
 		assertArrayEquals(after, AES_CTR.incrementBlock(before));
 		assertArrayEquals(beforeCopy, before);
 	}
+
+	@Test
+	void processesIncrementallyInChunksOfAnySize() {
+		byte[] message = new byte[1000];
+		for (int i = 0; i < message.length; i++) {
+			message[i] = (byte) (i * 31);
+		}
+		byte[] ciphertext = CTR.encrypt(IV, message);
+		byte[] body = Arrays.copyOfRange(ciphertext, AES.BLOCK_SIZE, ciphertext.length);
+		IncrementalCiphers.assertProcessesInChunksOfAnySize(CTR.newIncrementalCipher(), IV, message, body);
+	}
+
+	@Test
+	void carriesTheCounterAcrossUpdates() {
+		byte[] message = new byte[5 * AES.BLOCK_SIZE + 7];
+		for (int i = 0; i < message.length; i++) {
+			message[i] = (byte) (i * 31);
+		}
+		IncrementalCipher cipher = CTR.newIncrementalCipher();
+		// With these IVs, the low half of the counter wraps after the first block, or the whole counter after the third.
+		byte[][] ivs = {Bytes.convertHexToBytes("0000000000000000ffffffffffffffff"), Bytes.convertHexToBytes("fffffffffffffffffffffffffffffffd")};
+		for (byte[] iv : ivs) {
+			byte[] body = Arrays.copyOfRange(CTR.encrypt(iv, message), AES.BLOCK_SIZE, AES.BLOCK_SIZE + message.length);
+			// Split updates inside, on, and across the blocks where the counter carries.
+			for (int chunk : new int[] {5, 15, 16, 17, 33}) {
+				cipher.init(true, iv);
+				assertArrayEquals(body, IncrementalCiphers.runInChunks(cipher, message, chunk), "chunk " + chunk);
+			}
+		}
+	}
+
+	@Test
+	void processesDirectBuffers() {
+		for (AES.Engine engine : AES.Engine.values()) {
+			AES_CTR ctr = new AES_CTR(new AES(KEY, engine));
+			ByteBuffer message = ByteBuffer.allocateDirect(M0.length);
+			message.put(M0).flip();
+			ByteBuffer ciphertext = ByteBuffer.allocateDirect(C0.length);
+			ctr.encrypt(IV, message, ciphertext);
+			assertFalse(message.hasRemaining());
+			assertFalse(ciphertext.hasRemaining());
+			byte[] actual = new byte[C0.length];
+			ciphertext.flip().get(actual);
+			assertArrayEquals(C0, actual, engine.toString());
+
+			ciphertext.flip();
+			ByteBuffer plaintext = ByteBuffer.allocateDirect(M0.length);
+			ctr.decrypt(ciphertext, plaintext);
+			byte[] decrypted = new byte[M0.length];
+			plaintext.flip().get(decrypted);
+			assertArrayEquals(M0, decrypted, engine.toString());
+		}
+	}
+
+	@Test
+	void encryptsAndDecryptsFiles(@TempDir Path directory) throws IOException {
+		Path plaintext = directory.resolve("plaintext");
+		Path ciphertext = directory.resolve("ciphertext");
+		Path decrypted = directory.resolve("decrypted");
+		byte[][] messages = {M0, M2, new byte[AES_CTR.PARALLEL_THRESHOLD + 100]};
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (byte[] message : messages) {
+				Files.write(plaintext, message);
+				CTR.encryptFile(plaintext, ciphertext, IV);
+				assertArrayEquals(CTR.encrypt(IV, message), Files.readAllBytes(ciphertext));
+				CTR.decryptFile(ciphertext, decrypted);
+				assertArrayEquals(message, Files.readAllBytes(decrypted));
+
+				CTR.encryptFile(plaintext, ciphertext, IV, pool);
+				assertArrayEquals(CTR.encrypt(IV, message), Files.readAllBytes(ciphertext));
+				CTR.decryptFile(ciphertext, decrypted, pool);
+				assertArrayEquals(message, Files.readAllBytes(decrypted));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
 }
@@ -0,0 +1,110 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AES_GCMTest {
+	// Test cases 1 to 6 and 16 of the GCM specification (McGrew and Viega, Appendix B), as used in NIST's GCM validation.
+	private static final String P = "d9313225f88406e5a55909c5aff5269a86a7a9531534f7da2e4c303d8a318a721c3c0c95956809532fcf0e2449a6b525b16aedf5aa0de657ba637b391aafd255";
+	private static final String P_SHORT = P.substring(0, P.length() - 8);
+	private static final String A = "feedfacedeadbeeffeedfacedeadbeefabaddad2";
+	private static final String K = "feffe9928665731c6d6a8f9467308308";
+	private static final String[][] VECTORS = {
+		// key, IV, plaintext, AAD, ciphertext, tag
+		{"00000000000000000000000000000000", "000000000000000000000000", "", "", "", "58e2fccefa7e3061367f1d57a4e7455a"},
+		{"00000000000000000000000000000000", "000000000000000000000000", "00000000000000000000000000000000", "", "0388dace60b6a392f328c2b971b2fe78", "ab6e47d42cec13bdf53a67b21257bddf"},
+		{K, "cafebabefacedbaddecaf888", P, "", "42831ec2217774244b7221b784d0d49ce3aa212f2c02a4e035c17e2329aca12e21d514b25466931c7d8f6a5aac84aa051ba30b396a0aac973d58e091473f5985", "4d5c2af327cd64a62cf35abd2ba6fab4"},
+		{K, "cafebabefacedbaddecaf888", P_SHORT, A, "42831ec2217774244b7221b784d0d49ce3aa212f2c02a4e035c17e2329aca12e21d514b25466931c7d8f6a5aac84aa051ba30b396a0aac973d58e091", "5bc94fbc3221a5db94fae95ae7121a47"},
+		{K, "cafebabefacedbad", P_SHORT, A, "61353b4c2806934a777ff51fa22a4755699b2a714fcdc6f83766e5f97b6c742373806900e49f24b22b097544d4896b424989b5e1ebac0f07c23f4598", "3612d2e79e3b0785561be14aaca2fccb"},
+		{K, "9313225df88406e555909c5aff5269aa6a7a9538534f7da1e4c303d2a318a728c3c0c95156809539fcf0e2429a6b525416aedbf5a0de6a57a637b39b", P_SHORT, A, "8ce24998625615b603a033aca13fb894be9112a5c3a211a8ba262a3cca7e2ca701e4a9a4fba43c90ccdcb281d48c7c6fd62875d2aca417034c34aee5", "619cc5aefffe0bfa462af43c1699d050"},
+		{K + K, "cafebabefacedbaddecaf888", P_SHORT, A, "522dc1f099567d07f47f37a32a84427d643a8cdcbfe5c0c97598a2bd2555d1aa8cb08e48590dbb3da7b08b1056828838c5f61e6393ba7a0abcc9f662", "76fc6ece0f4e1768cddf8853bb2d551b"},
+	};
+
+	@Test
+	void encryptsAndDecryptsTestVectors() {
+		for (String[] vector : VECTORS) {
+			byte[] key = Bytes.convertHexToBytes(vector[0]);
+			byte[] iv = Bytes.convertHexToBytes(vector[1]);
+			byte[] message = Bytes.convertHexToBytes(vector[2]);
+			byte[] aad = Bytes.convertHexToBytes(vector[3]);
+			byte[] expected = Bytes.convertHexToBytes(vector[4] + vector[5]);
+			for (AES.Engine engine : AES.Engine.values()) {
+				AES_GCM gcm = new AES_GCM(new AES(key, engine));
+				assertArrayEquals(expected, crypt(gcm, true, iv, aad, message, message.length), engine + " " + vector[1]);
+				assertArrayEquals(message, crypt(gcm, false, iv, aad, expected, 7), engine + " " + vector[1]);
+			}
+		}
+	}
+
+	@Test
+	void prependsIVAndAppendsTag() {
+		String[] vector = VECTORS[3];
+		AES_GCM gcm = new AES_GCM(Bytes.convertHexToBytes(vector[0]));
+		byte[] iv = Bytes.convertHexToBytes(vector[1]);
+		byte[] aad = Bytes.convertHexToBytes(vector[3]);
+		byte[] ciphertext = gcm.encrypt(iv, aad, Bytes.convertHexToBytes(vector[2]));
+		assertArrayEquals(Bytes.convertHexToBytes(vector[1] + vector[4] + vector[5]), ciphertext);
+		assertArrayEquals(Bytes.convertHexToBytes(vector[2]), gcm.decrypt(aad, ciphertext));
+	}
+
+	@Test
+	void rejectsTamperedCiphertextIVAndAAD() {
+		AES_GCM gcm = new AES_GCM(Bytes.convertHexToBytes(K));
+		byte[] aad = Bytes.convertHexToBytes(A);
+		byte[] ciphertext = gcm.encrypt(Bytes.convertHexToBytes("cafebabefacedbaddecaf888"), aad, Bytes.convertHexToBytes(P));
+		for (int i : new int[] {0, AES_GCM.IV_LENGTH, ciphertext.length - 1}) {
+			byte[] tampered = ciphertext.clone();
+			tampered[i] ^= 1;
+			assertThrows(SecurityException.class, () -> gcm.decrypt(aad, tampered));
+		}
+		byte[] tamperedAAD = aad.clone();
+		tamperedAAD[0] ^= 1;
+		assertThrows(SecurityException.class, () -> gcm.decrypt(tamperedAAD, ciphertext));
+		assertThrows(SecurityException.class, () -> gcm.decrypt(aad, Arrays.copyOf(ciphertext, AES_GCM.IV_LENGTH + AES_GCM.TAG_LENGTH)));
+	}
+
+	@Test
+	void matchesJCAInPiecesOfAnySize() throws Exception {
+		Random random = new Random(38);
+		for (int trial = 0; trial < 50; trial++) {
+			byte[] key = new byte[16 + 8 * random.nextInt(3)];
+			byte[] iv = new byte[trial % 2 == 0 ? AES_GCM.IV_LENGTH : 1 + random.nextInt(40)];
+			byte[] aad = new byte[random.nextInt(70)];
+			byte[] message = new byte[random.nextInt(3 * AES_GCM.CHUNK_SIZE)];
+			random.nextBytes(key);
+			random.nextBytes(iv);
+			random.nextBytes(aad);
+			random.nextBytes(message);
+
+			Cipher jca = Cipher.getInstance("AES/GCM/NoPadding");
+			jca.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+			jca.updateAAD(aad);
+			byte[] expected = jca.doFinal(message);
+
+			AES_GCM gcm = new AES_GCM(key);
+			int piece = 1 + random.nextInt(100);
+			assertArrayEquals(expected, crypt(gcm, true, iv, aad, message, piece), "trial " + trial);
+			assertArrayEquals(message, crypt(gcm, false, iv, aad, expected, piece), "trial " + trial);
+		}
+	}
+
+	/** Runs the incremental cipher with the AAD and input passed in pieces of at most piece bytes. */
+	private static byte[] crypt(AES_GCM gcm, boolean encrypt, byte[] iv, byte[] aad, byte[] in, int piece) {
+		AES_GCM.Incremental cipher = gcm.newIncrementalCipher();
+		cipher.init(encrypt, iv);
+		for (int off = 0; off < aad.length; off += piece) {
+			cipher.updateAAD(aad, off, Math.min(piece, aad.length - off));
+		}
+		int size = cipher.getOutputSize(in.length);
+		byte[] out = IncrementalCiphers.runInChunks(cipher, in, piece);
+		assertEquals(size, out.length);
+		return out;
+	}
+}
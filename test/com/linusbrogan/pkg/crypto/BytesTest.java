@@ -2,6 +2,10 @@ package com.linusbrogan.pkg.crypto;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class BytesTest {
@@ -76,6 +80,64 @@ public class BytesTest {
 		assertThrows(AssertionError.class, () -> Bytes.xor(a, b));
 	}
 
+	@Test
+	void xorsIntoDestinationAtOffsets() {
+		byte[] a = {0, 45, 22, -80, 9};
+		byte[] b = {72, -12, -12, 30, 0, 0};
+		byte[] dst = new byte[6];
+		Bytes.xorInto(a, 1, b, 0, dst, 2, 4);
+		assertArrayEquals(new byte[] {0, 0, 101, -30, 68, 23}, dst);
+	}
+
+	@Test
+	void xorsWordsAndTailsAtAnyOffset() {
+		Random random = new Random(18);
+		byte[] a = new byte[64];
+		byte[] b = new byte[64];
+		for (int length = 0; length <= 40; length++) {
+			for (int offset = 0; offset < 8; offset++) {
+				random.nextBytes(a);
+				random.nextBytes(b);
+				byte[] dst = new byte[64];
+				Bytes.xorInto(a, offset, b, 7 - offset, dst, 3, length);
+				byte[] inPlace = a.clone();
+				Bytes.xorInPlace(inPlace, offset, b, 7 - offset, length);
+				for (int i = 0; i < length; i++) {
+					assertEquals((byte) (a[offset + i] ^ b[7 - offset + i]), dst[3 + i]);
+					assertEquals(dst[3 + i], inPlace[offset + i]);
+				}
+				assertEquals(0, dst[3 + length]);
+			}
+		}
+	}
+
+	@Test
+	void xorsLongRunsOfArraysAndDirectBuffers() {
+		// Long enough for VectorBytes when VECTORIZED, with tails of every length.
+		Random random = new Random(19);
+		for (int length = 60; length <= 300; length += 7) {
+			byte[] a = new byte[length + 5];
+			byte[] b = new byte[length + 5];
+			random.nextBytes(a);
+			random.nextBytes(b);
+			byte[] expected = new byte[length];
+			for (int i = 0; i < length; i++) {
+				expected[i] = (byte) (a[5 + i] ^ b[i]);
+			}
+			byte[] dst = new byte[length];
+			Bytes.xorInto(a, 5, b, 0, dst, 0, length);
+			assertArrayEquals(expected, dst);
+
+			ByteBuffer directA = ByteBuffer.allocateDirect(a.length).put(a).position(5);
+			ByteBuffer directB = ByteBuffer.allocateDirect(length).put(b, 0, length).flip();
+			ByteBuffer directDst = ByteBuffer.allocateDirect(length);
+			Bytes.xor(directA, directB, directDst);
+			byte[] result = new byte[length];
+			directDst.flip().get(result);
+			assertArrayEquals(expected, result);
+		}
+	}
+
 	@Test
 	void transposesMatrix() {
 		byte[][] before = {
@@ -97,4 +159,18 @@ public class BytesTest {
 		byte[] bytes = {72, 101, 108, 108, 111, 44, 32, 119, 111, 114, 108, 100, 33};
 		assertArrayEquals(bytes, Bytes.convertTextToBytes(text));
 	}
+
+	@Test
+	void xorsBuffers() {
+		byte[] a = {45, 22, -80, 9, 1, 2, 3, 4, 5, 6, 7};
+		byte[] b = {72, -12, -12, 30, 8, 9, 10, 11, 12, 13, 14};
+		ByteBuffer direct = ByteBuffer.allocateDirect(a.length).order(ByteOrder.LITTLE_ENDIAN);
+		direct.put(a).flip();
+		ByteBuffer dst = ByteBuffer.allocateDirect(a.length);
+		Bytes.xor(direct, ByteBuffer.wrap(b), dst);
+		assertFalse(direct.hasRemaining());
+		byte[] actual = new byte[a.length];
+		dst.flip().get(actual);
+		assertArrayEquals(Bytes.xor(a, b), actual);
+	}
 }
@@ -0,0 +1,44 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HMACTest {
+	@Test
+	void matchesJCAAcrossKeyAndMessageLengths() throws Exception {
+		Random random = new Random(4226);
+		// Keys shorter than, equal to, and longer than both block sizes; messages around each padding boundary.
+		int[] keyLengths = {16, 20, 64, 65, 128, 129, 300};
+		for (HOTP.HashAlgorithm algorithm : HOTP.HashAlgorithm.values()) {
+			for (int keyLength : keyLengths) {
+				byte[] key = new byte[keyLength];
+				random.nextBytes(key);
+				Mac reference = Mac.getInstance(algorithm.algorithm);
+				reference.init(new SecretKeySpec(key, algorithm.algorithm));
+				HMAC hmac = HMAC.getInstance(algorithm, key);
+				for (int length = 0; length <= 300; length++) {
+					byte[] message = new byte[length];
+					random.nextBytes(message);
+					assertArrayEquals(reference.doFinal(message), hmac.doFinal(message), algorithm + " " + keyLength + " " + length);
+				}
+			}
+		}
+	}
+
+	@Test
+	void copiesShareTheKeyButNotBuffers() {
+		byte[] key = Bytes.convertTextToBytes("12345678901234567890");
+		HMAC hmac = HMAC.getInstance(HOTP.HashAlgorithm.SHA1, key);
+		HMAC copy = hmac.copy();
+		byte[] counter = new byte[8];
+		byte[] out = new byte[copy.getMacLength() + 3];
+		copy.doFinal(counter, 0, counter.length, out, 3);
+		assertEquals("cc93cf18508d94934c64b65d8ba7667fb7cde4b0", Bytes.convertBytesToHex(hmac.doFinal(counter)));
+		assertEquals("000000cc93cf18508d94934c64b65d8ba7667fb7cde4b0", Bytes.convertBytesToHex(out));
+	}
+}
@@ -2,6 +2,8 @@ package com.linusbrogan.pkg.crypto;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.ForkJoinPool;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class HOTPTest {
@@ -87,6 +89,107 @@ class HOTPTest {
 		assertEquals(hotpSHA512, HOTP.HOTP(secretSHA512, counter, digits, HOTP.HashAlgorithm.SHA512));
 	}
 
+	@Test
+	void staticMethodsRekeyBetweenSecrets() {
+		byte[] other = Bytes.convertTextToBytes("09876543210987654321");
+		HOTP otherHOTP = new HOTP(other, HOTP.HashAlgorithm.SHA1);
+		for (int i = 0; i < HOTPValues.length; i++) {
+			assertEquals(otherHOTP.generate(i), HOTP.HOTP(other, i, 6, HOTP.HashAlgorithm.SHA1));
+			assertEquals(HOTPValues[i], HOTP.HOTP(secret, i, 6, HOTP.HashAlgorithm.SHA1));
+		}
+	}
+
+	@Test
+	void hashesCountersOfOtherLengthsWhole() {
+		HOTP hotp = new HOTP(secret, HOTP.HashAlgorithm.SHA1);
+		for (byte[] counter : new byte[][] {{1, 2, 3, 4}, Bytes.convertHexToBytes("000000000000000000000007")}) {
+			int expected = HOTP.Truncate(HOTP.HMAC(HOTP.HashAlgorithm.SHA1, secret, counter), 6);
+			assertEquals(expected, HOTP.HOTP(secret, counter));
+			assertEquals(expected, hotp.generate(counter));
+		}
+	}
+
+	@Test
+	void reusableGeneratorMatchesStaticValues() {
+		HOTP hotp = new HOTP(secret, HOTP.HashAlgorithm.SHA1);
+		for (int i = 0; i < HOTPValues.length; i++) {
+			assertEquals(HOTPValues[i], hotp.generate(Bytes.convertLongToBytes(i)));
+		}
+		assertEquals(truncatedValues[7], hotp.generate(Bytes.convertLongToBytes(7), 8));
+	}
+
+	@Test
+	void generatesFromLongCounters() {
+		HOTP hotp = new HOTP(secret, HOTP.HashAlgorithm.SHA1);
+		for (int i = 0; i < HOTPValues.length; i++) {
+			assertEquals(HOTPValues[i], hotp.generate((long) i));
+			assertEquals(HOTPValues[i], HOTP.HOTP(secret, i, 6, HOTP.HashAlgorithm.SHA1));
+		}
+	}
+
+	@Test
+	void reusableGeneratorWorksAcrossThreads() throws InterruptedException {
+		HOTP hotp = new HOTP(secret, HOTP.HashAlgorithm.SHA1);
+		Thread[] threads = new Thread[4];
+		boolean[] correct = new boolean[threads.length];
+		for (int t = 0; t < threads.length; t++) {
+			int thread = t;
+			threads[t] = new Thread(() -> {
+				boolean allCorrect = true;
+				for (int round = 0; round < 100; round++) {
+					int i = (round + thread) % HOTPValues.length;
+					allCorrect &= HOTPValues[i] == hotp.generate(Bytes.convertLongToBytes(i));
+				}
+				correct[thread] = allCorrect;
+			});
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			assertTrue(correct[t]);
+		}
+	}
+
+	@Test
+	void verifiesWithinLookAheadWindow() {
+		HOTP hotp = new HOTP(secret, HOTP.HashAlgorithm.SHA1);
+		for (int i = 0; i < HOTPValues.length; i++) {
+			assertEquals(i, hotp.verify(HOTPValues[i], 0, HOTPValues.length - 1));
+		}
+		for (int i = 2; i < HOTPValues.length; i++) {
+			assertEquals(i - 2, HOTP.verify(secret, HOTPValues[i], 2, HOTPValues.length));
+		}
+		assertEquals(-1, hotp.verify(HOTPValues[9], 0, 8));
+		assertEquals(-1, hotp.verify(HOTPValues[0], 1, 8));
+		assertEquals(-1, HOTP.verify(secret, 123456, 0, HOTPValues.length - 1));
+		assertEquals(7, hotp.verify(truncatedValues[7], 0, 9, 8));
+	}
+
+	@Test
+	void failsWithWindowTooLargeToCount() {
+		HOTP hotp = new HOTP(secret, HOTP.HashAlgorithm.SHA1);
+		assertThrows(Throwable.class, () -> hotp.verify(HOTPValues[0], 0, Integer.MAX_VALUE));
+		assertThrows(Throwable.class, () -> HOTP.verify(secret, HOTPValues[0], 0, Integer.MAX_VALUE));
+		assertThrows(Throwable.class, () -> hotp.resynchronize(new int[] {HOTPValues[0]}, 0, Integer.MAX_VALUE, 6));
+	}
+
+	@Test
+	void resynchronizesAcrossLargeWindows() {
+		HOTP hotp = new HOTP(secret, HOTP.HashAlgorithm.SHA1);
+		long C = 1000;
+		int offset = HOTP.PARALLEL_WINDOW + 123;
+		int[] codes = {hotp.generate(C + offset, 8), hotp.generate(C + offset + 1, 8)};
+		assertEquals(offset, hotp.resynchronize(codes, C, offset + 500, 8));
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			assertEquals(offset, hotp.resynchronize(codes, C, offset + 500, 8, pool));
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(-1, hotp.resynchronize(codes, C, offset - 1, 8));
+		assertEquals(-1, hotp.resynchronize(new int[] {codes[1], codes[0]}, C, offset + 500, 8));
+	}
+
 	@Test
 	void failsWithShortDigits() {
 		int digits = 5;
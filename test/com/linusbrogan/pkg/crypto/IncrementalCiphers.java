@@ -0,0 +1,35 @@
+package com.linusbrogan.pkg.crypto;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks shared by the tests of each IncrementalCipher. */
+final class IncrementalCiphers {
+	private IncrementalCiphers() {}
+
+	/**
+	 * Asserts that cipher encrypts message to body, and decrypts body to message, with the input passed in chunks of many sizes.
+	 * @param body ciphertext without the IV
+	 */
+	static void assertProcessesInChunksOfAnySize(IncrementalCipher cipher, byte[] iv, byte[] message, byte[] body) {
+		for (int chunk = 1; chunk <= 70; chunk += 3) {
+			cipher.init(true, iv);
+			assertArrayEquals(body, runInChunks(cipher, message, chunk), "chunk " + chunk);
+			cipher.init(false, iv);
+			assertArrayEquals(message, runInChunks(cipher, body, chunk), "chunk " + chunk);
+		}
+	}
+
+	/** Runs an initialized cipher over input passed in chunks of at most chunk bytes, then finishes it. */
+	static byte[] runInChunks(IncrementalCipher cipher, byte[] input, int chunk) {
+		byte[] output = new byte[cipher.getOutputSize(input.length)];
+		int written = 0;
+		for (int offset = 0; offset < input.length; offset += chunk) {
+			int length = Math.min(chunk, input.length - offset);
+			written += cipher.update(input, offset, length, output, written);
+		}
+		written += cipher.doFinal(output, written);
+		return Arrays.copyOf(output, written);
+	}
+}
@@ -0,0 +1,65 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OTPBatchTest {
+	@Test
+	void matchesSingleHOTPValues() {
+		Random random = new Random(6238);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (HOTP.HashAlgorithm algorithm : HOTP.HashAlgorithm.values()) {
+				for (int secrets : new int[] {0, 1, 100, OTPBatch.PARALLEL_THRESHOLD + 7}) {
+					byte[][] K = new byte[secrets][];
+					long[] C = new long[secrets];
+					for (int i = 0; i < secrets; i++) {
+						// Vary the length so some keys are hashed first.
+						K[i] = new byte[16 + random.nextInt(200)];
+						random.nextBytes(K[i]);
+						C[i] = random.nextLong();
+					}
+					int[] values = new int[secrets + 3];
+					OTPBatch.HOTP(K, C, 8, algorithm, values, 3, pool);
+					int[] common = OTPBatch.HOTP(K, C, 8, algorithm);
+					for (int i = 0; i < secrets; i++) {
+						int expected = HOTP.HOTP(K[i], C[i], 8, algorithm);
+						assertEquals(expected, values[3 + i]);
+						assertEquals(expected, common[i]);
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void generatesTOTPValuesAtOneTime() {
+		byte[][] K = new byte[50][];
+		for (int i = 0; i < K.length; i++) {
+			K[i] = Bytes.convertTextToBytes("1234567890123456789" + i);
+		}
+		long now = 1111111109L;
+		int[] values = OTPBatch.TOTP(K, now, 8);
+		for (int i = 0; i < K.length; i++) {
+			assertEquals(TOTP.TOTP(K[i], 8, 0, 30, HOTP.HashAlgorithm.SHA1, now), values[i]);
+		}
+		assertEquals(7081804, OTPBatch.TOTP(new byte[][] {Bytes.convertTextToBytes("12345678901234567890")}, now, 8)[0]);
+	}
+
+	@Test
+	void doesNotLeaveTheLastSecretKeyedOnTheThread() {
+		byte[] secret = Bytes.convertTextToBytes("12345678901234567890");
+		long C = 1;
+		// Below the parallel threshold, the batch runs on this thread.
+		OTPBatch.HOTP(new byte[][] {secret}, new long[] {C}, 6, HOTP.HashAlgorithm.SHA1);
+		byte[] expected = HOTP.HMAC(HOTP.HashAlgorithm.SHA1, secret, Bytes.convertLongToBytes(C));
+		assertFalse(Arrays.equals(expected, HOTP.context(HOTP.HashAlgorithm.SHA1).HMAC(C)));
+	}
+}
@@ -0,0 +1,106 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayCacheTest {
+	@Test
+	void acceptsEachStepOnce() {
+		ReplayCache<Integer> replayCache = new ReplayCache<>(1, 10);
+		assertTrue(replayCache.accept(1, 100, 100));
+		assertFalse(replayCache.accept(1, 100, 100));
+		assertFalse(replayCache.accept(1, 99, 100));
+		assertTrue(replayCache.accept(1, 101, 100));
+		assertTrue(replayCache.accept(2, 99, 100));
+	}
+
+	@Test
+	void evictsExpiredStepsAndRejectsThem() {
+		ReplayCache<Integer> replayCache = new ReplayCache<>(1, 10);
+		for (int user = 0; user < 5; user++) {
+			assertTrue(replayCache.accept(user, 100, 100));
+		}
+		assertEquals(5, replayCache.size());
+		assertTrue(replayCache.accept(5, 102, 102));
+		// Each call evicts a few expired entries, including calls that are rejected.
+		for (int i = 0; i < 5; i++) {
+			assertFalse(replayCache.accept(5, 102, 102));
+		}
+		assertEquals(1, replayCache.size());
+		// Evicted users cannot replay their old step.
+		assertFalse(replayCache.accept(0, 100, 100));
+	}
+
+	@Test
+	void refusesNewUsersWhenFull() {
+		ReplayCache<Integer> replayCache = new ReplayCache<>(1, 2);
+		assertTrue(replayCache.accept(0, 100, 100));
+		assertTrue(replayCache.accept(1, 100, 100));
+		assertFalse(replayCache.accept(2, 100, 100));
+		assertTrue(replayCache.accept(0, 101, 100));
+		assertTrue(replayCache.accept(2, 103, 103));
+	}
+
+	@Test
+	void evictsExpiredUsersToMakeRoomWhenFull() {
+		ReplayCache<Integer> replayCache = new ReplayCache<>(0, 100);
+		for (int user = 0; user < 100; user++) {
+			assertTrue(replayCache.accept(user, 100, 100));
+		}
+		// The incremental sweep cannot keep up with a whole step expiring at once, so a full cache evicts on demand.
+		for (int user = 100; user < 200; user++) {
+			assertTrue(replayCache.accept(user, 101, 101));
+		}
+		assertEquals(100, replayCache.size());
+	}
+
+	@Test
+	void staysBoundedAcrossThreads() throws InterruptedException {
+		int maximumUsers = 50;
+		ReplayCache<Integer> replayCache = new ReplayCache<>(1, maximumUsers);
+		AtomicInteger accepted = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			int first = t * 1000;
+			threads[t] = new Thread(() -> {
+				for (int user = first; user < first + 1000; user++) {
+					if (replayCache.accept(user, 100, 100)) {
+						accepted.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(maximumUsers, accepted.get());
+		assertEquals(maximumUsers, replayCache.size());
+	}
+
+	@Test
+	void acceptsEachStepOnceAcrossThreads() throws InterruptedException {
+		ReplayCache<Integer> replayCache = new ReplayCache<>(2, 1000);
+		AtomicInteger accepted = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int step = 100; step < 200; step++) {
+					for (int user = 0; user < 100; user++) {
+						if (replayCache.accept(user, step, step)) {
+							accepted.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(100 * 100, accepted.get());
+	}
+}
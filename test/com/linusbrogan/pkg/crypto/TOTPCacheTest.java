@@ -0,0 +1,80 @@
+package com.linusbrogan.pkg.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TOTPCacheTest {
+	private static final TOTP totp = new TOTP(Bytes.convertTextToBytes("12345678901234567890"));
+
+	@Test
+	void remembersValuesWithinSkewWindow() {
+		TOTPCache<String> cache = new TOTPCache<>(1, 10);
+		for (long step = 99; step <= 101; step++) {
+			assertEquals(totp.generateAt(step), cache.get("alice", totp, step, 100));
+		}
+		assertEquals(3, cache.size());
+		// Too far ahead to remember.
+		assertEquals(totp.generateAt(102), cache.get("alice", totp, 102, 100));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	void evictsValuesWhenStepRollsPastWindow() {
+		TOTPCache<String> cache = new TOTPCache<>(1, 10);
+		cache.get("alice", totp, 99, 100);
+		cache.get("alice", totp, 100, 100);
+		cache.get("alice", totp, 101, 101);
+		assertEquals(2, cache.size());
+		cache.get("bob", totp, 103, 103);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void boundsValuesByUserCount() {
+		TOTPCache<Integer> cache = new TOTPCache<>(0, 2);
+		for (int user = 0; user < 5; user++) {
+			assertEquals(totp.generateAt(100), cache.get(user, totp, 100, 100));
+		}
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	void keysIncludeDigitsAndAlgorithm() {
+		TOTPCache<String> cache = new TOTPCache<>(0, 10);
+		byte[] secret = Bytes.convertTextToBytes("12345678901234567890");
+		TOTP eightDigits = new TOTP(secret, 8, 0, 30, HOTP.HashAlgorithm.SHA1);
+		assertEquals(totp.generateAt(100), cache.get("alice", totp, 100, 100));
+		assertEquals(eightDigits.generateAt(100), cache.get("alice", eightDigits, 100, 100));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	void keysIncludeStartTimeAndTimeStep() {
+		TOTPCache<String> cache = new TOTPCache<>(0, 10);
+		byte[] secret = Bytes.convertTextToBytes("12345678901234567890");
+		TOTP shifted = new TOTP(secret, 6, 15, 30, HOTP.HashAlgorithm.SHA1);
+		TOTP minutes = new TOTP(secret, 6, 0, 60, HOTP.HashAlgorithm.SHA1);
+		long now = 59;
+		assertEquals(totp.generate(now), totp.generate(now, "alice", cache));
+		// The same step number under other parameters is a different time, so each gets its own entry.
+		assertEquals(shifted.generate(now + 15), shifted.generate(now + 15, "alice", cache));
+		assertEquals(minutes.generate(2 * now), minutes.generate(2 * now, "alice", cache));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	void evictsExpiredValuesToMakeRoomWhenFull() {
+		TOTPCache<Integer> cache = new TOTPCache<>(0, 100);
+		for (int user = 0; user < 100; user++) {
+			cache.get(user, totp, 100, 100);
+		}
+		// The incremental sweep cannot keep up with a whole step expiring at once, so a full cache evicts on demand.
+		for (int user = 100; user < 200; user++) {
+			assertEquals(totp.generateAt(101), cache.get(user, totp, 101, 101));
+		}
+		assertEquals(100, cache.size());
+		assertEquals(totp.generateAt(101), cache.get(199, totp, 101, 101));
+		assertEquals(100, cache.size());
+	}
+}
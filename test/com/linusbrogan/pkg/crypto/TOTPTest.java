@@ -60,6 +60,64 @@ class TOTPTest {
 			assertEquals(expectedTOTP, TOTP.TOTP(secret, digits, epoch, period, algorithm, time));
 		}
 	}
+
+	@Test
+	void reusableGeneratorMatchesExpectedTOTPValues() {
+		final int digits = 8;
+		final long epoch = 0;
+		final long period = 30;
+		for (int i = 0; i < algorithms.length; i++) {
+			TOTP totp = new TOTP(Bytes.convertTextToBytes(secrets[i]), digits, epoch, period, algorithms[i]);
+			for (int j = 0; j < seconds.length; j++) {
+				assertEquals(totps[3 * j + i], totp.generate(seconds[j]));
+			}
+		}
+	}
+
+	@Test
+	void verifiesWithinSkewWindow() {
+		final int digits = 8;
+		final long period = 30;
+		for (int i = 0; i < algorithms.length; i++) {
+			byte[] secret = Bytes.convertTextToBytes(secrets[i]);
+			TOTP totp = new TOTP(secret, digits, 0, period, algorithms[i]);
+			long step = 1111111109L / period;
+			int code = totps[3 + i];
+			assertEquals(step, totp.verify(code, 1111111109L, 0));
+			assertEquals(step, totp.verify(code, 1111111109L + period, 1));
+			assertEquals(step, totp.verify(code, 1111111109L - 2 * period, 2));
+			assertEquals(TOTP.NO_MATCH, totp.verify(code, 1111111109L + 2 * period, 1));
+			assertEquals(step, TOTP.verify(secret, code, 1111111109L - period, 1, digits, 0, period, algorithms[i]));
+		}
+		// Steps before T0 are not checked.
+		assertEquals(1, TOTP.verify(Bytes.convertTextToBytes(secrets[0]), 287082, 0, 3));
+	}
+
+	@Test
+	void rejectsReplayedValues() {
+		TOTP totp = new TOTP(Bytes.convertTextToBytes(secrets[0]), 8, 0, 30, HOTP.HashAlgorithm.SHA1);
+		ReplayCache<String> replayCache = new ReplayCache<>(1, 10);
+		int code = totps[3];
+		assertTrue(totp.verify("alice", code, 1111111109L, replayCache));
+		assertFalse(totp.verify("alice", code, 1111111109L, replayCache));
+		assertFalse(totp.verify("alice", code, 1111111109L + 30, replayCache));
+		assertTrue(totp.verify("bob", code, 1111111109L + 30, replayCache));
+		assertFalse(totp.verify("alice", 12345678, 1111111109L, replayCache));
+	}
+
+	@Test
+	void cachedValuesMatchGeneratedValues() {
+		TOTPCache<Integer> cache = new TOTPCache<>(1, 10);
+		for (int i = 0; i < algorithms.length; i++) {
+			TOTP totp = new TOTP(Bytes.convertTextToBytes(secrets[i]), 8, 0, 30, algorithms[i]);
+			for (int j = 0; j < seconds.length; j++) {
+				assertEquals(totps[3 * j + i], totp.generate(seconds[j], i, cache));
+				assertEquals(totps[3 * j + i], totp.generate(seconds[j], i, cache));
+				assertEquals(seconds[j] / 30, totp.verify(totps[3 * j + i], seconds[j] + 30, i, cache));
+				assertEquals(TOTP.NO_MATCH, totp.verify(totps[3 * j + i], seconds[j] + 60, i, cache));
+			}
+		}
+	}
 }
 
 /*
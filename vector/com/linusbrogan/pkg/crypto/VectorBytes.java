@@ -0,0 +1,42 @@
+package com.linusbrogan.pkg.crypto;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Bulk XOR in the widest SIMD lanes the CPU has, through the incubating Vector API.
+ * This is the only class compiled against jdk.incubator.vector; Bytes loads it reflectively when the module is present, so the rest of the library neither compiles nor runs against the module.
+ */
+final class VectorBytes implements BulkXor {
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	VectorBytes() {}
+
+	@Override
+	public int xorInto(byte[] a, int aOff, byte[] b, int bOff, byte[] dst, int dstOff, int length) {
+		int bound = SPECIES.loopBound(length);
+		for (int i = 0; i < bound; i += SPECIES.length()) {
+			ByteVector x = ByteVector.fromArray(SPECIES, a, aOff + i);
+			ByteVector y = ByteVector.fromArray(SPECIES, b, bOff + i);
+			x.lanewise(VectorOperators.XOR, y).intoArray(dst, dstOff + i);
+		}
+		return bound;
+	}
+
+	@Override
+	public int xorInto(ByteBuffer a, int aPos, ByteBuffer b, int bPos, ByteBuffer dst, int dstPos, int length) {
+		// XOR works bytewise, so the byte order only has to be the same for all three.
+		ByteOrder order = ByteOrder.nativeOrder();
+		int bound = SPECIES.loopBound(length);
+		for (int i = 0; i < bound; i += SPECIES.length()) {
+			ByteVector x = ByteVector.fromByteBuffer(SPECIES, a, aPos + i, order);
+			ByteVector y = ByteVector.fromByteBuffer(SPECIES, b, bPos + i, order);
+			x.lanewise(VectorOperators.XOR, y).intoByteBuffer(dst, dstPos + i, order);
+		}
+		return bound;
+	}
+}